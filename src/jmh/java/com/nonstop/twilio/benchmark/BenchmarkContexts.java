@@ -0,0 +1,108 @@
+package com.nonstop.twilio.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.impl.client.HttpClients;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.BulkMessageDispatcher;
+import com.nonstop.twilio.service.IdempotencyCache;
+import com.nonstop.twilio.service.MessageIdGenerator;
+import com.nonstop.twilio.service.MessageService;
+import com.nonstop.twilio.service.MessageServiceRegistry;
+import com.nonstop.twilio.service.MessagingMetrics;
+import com.nonstop.twilio.service.MessagingService;
+import com.nonstop.twilio.service.PriorityScheduler;
+import com.nonstop.twilio.service.ProviderResilience;
+import com.nonstop.twilio.service.RateLimiterRegistry;
+import com.nonstop.twilio.service.RecipientNormalizer;
+import com.nonstop.twilio.service.SenderRouter;
+import com.nonstop.twilio.service.coalesce.MessageCoalescer;
+import com.nonstop.twilio.service.impl.EmailService;
+import com.nonstop.twilio.service.impl.FacebookMessengerService;
+import com.nonstop.twilio.service.outbox.OutboxService;
+import com.nonstop.twilio.service.schedule.ScheduledSendService;
+import com.nonstop.twilio.service.suppression.SuppressionService;
+import com.nonstop.twilio.service.template.TemplateService;
+import com.sendgrid.Client;
+import com.sendgrid.SendGrid;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+// small application contexts holding only what a benchmark needs, started without Spring Boot so there are
+// no credentials to supply and nothing else running in the forked JVM
+public final class BenchmarkContexts {
+
+	static {
+		// the per-message info logs would otherwise be the main thing measured
+		((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+	}
+
+	private BenchmarkContexts() {
+	}
+
+	// the messaging core with a stub provider per channel, email being batch capable
+	public static AnnotationConfigApplicationContext messaging(long providerLatencyMicros, Map<String, Object> properties) {
+		// nothing is scheduled in the benchmarks, so there is nothing to snapshot either
+		Map<String, Object> withDefaults = new HashMap<>(properties);
+		withDefaults.putIfAbsent("messaging.scheduled.snapshot-file", "");
+		withDefaults.putIfAbsent("messaging.suppression.directory", "");
+
+		AnnotationConfigApplicationContext context = newContext(withDefaults);
+		context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+		context.registerBean(ObjectMapper.class, () -> new ObjectMapper().findAndRegisterModules());
+		for (MessageChannel channel : MessageChannel.values()) {
+			MessageService service = channel == MessageChannel.EMAIL
+					? new StubBatchMessageService(channel, providerLatencyMicros, 1000)
+					: new StubMessageService(channel, providerLatencyMicros);
+			context.registerBean(channel.name().toLowerCase() + "Service", MessageService.class, () -> service);
+		}
+		context.register(MessageServiceRegistry.class, SenderRouter.class, PriorityScheduler.class, BulkMessageDispatcher.class,
+				RateLimiterRegistry.class, ProviderResilience.class, OutboxService.class, IdempotencyCache.class,
+				MessagingMetrics.class, TemplateService.class, ScheduledSendService.class, MessageCoalescer.class,
+				RecipientNormalizer.class, SuppressionService.class, MessagingService.class);
+		context.refresh();
+		return context;
+	}
+
+	// the real Facebook and email services talking to the local stand-in server
+	public static AnnotationConfigApplicationContext providers(LocalProviderServer server) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("facebook.page-access-token", "benchmark-page-token");
+		properties.put("facebook.api-version", "v18.0");
+		properties.put("facebook.graph-base-url", server.getBaseUrl());
+		properties.put("sendgrid.from-email", "noreply@example.com");
+		properties.put("sendgrid.from-name", "Benchmark");
+
+		AnnotationConfigApplicationContext context = newContext(properties);
+		context.registerBean(WebClient.class, () -> WebClient.builder().build());
+		context.registerBean(Scheduler.class, Schedulers::boundedElastic);
+		context.registerBean(SendGrid.class, () -> {
+			// test mode makes the client use plain http
+			SendGrid sendGrid = new SendGrid("SG.benchmark", new Client(HttpClients.createDefault(), true));
+			sendGrid.setHost(server.getHost());
+			return sendGrid;
+		});
+		context.register(RateLimiterRegistry.class, RecipientNormalizer.class, MessageIdGenerator.class,
+				FacebookMessengerService.class, EmailService.class);
+		context.refresh();
+		return context;
+	}
+
+	private static AnnotationConfigApplicationContext newContext(Map<String, Object> properties) {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+		return context;
+	}
+}
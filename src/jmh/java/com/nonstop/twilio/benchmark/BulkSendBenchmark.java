@@ -0,0 +1,77 @@
+package com.nonstop.twilio.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.MessagingService;
+
+// one sendBulkMessage call per operation. SMS goes out one request at a time, EMAIL is grouped into batches,
+// and the simulated provider latency shows how well the per-channel concurrency hides it
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkSendBenchmark {
+
+	@Param({ "SMS", "EMAIL" })
+	private MessageChannel channel;
+
+	@Param({ "10", "100", "1000" })
+	private int batchSize;
+
+	@Param({ "10", "50" })
+	private int concurrency;
+
+	@Param({ "0", "1000" })
+	private long providerLatencyMicros;
+
+	private AnnotationConfigApplicationContext context;
+	private MessagingService messagingService;
+	private List<MessageRequest> requests;
+
+	@Setup
+	public void setUp() {
+		context = BenchmarkContexts.messaging(providerLatencyMicros, Map.of(
+				"messaging.rate-limit.enabled", "false",
+				"messaging.bulk.max-concurrency-per-channel", String.valueOf(concurrency)));
+		messagingService = context.getBean(MessagingService.class);
+
+		requests = new ArrayList<>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			requests.add(channel == MessageChannel.EMAIL
+					? new MessageRequest(channel, "user" + i + "@example.com", "Hello", "Newsletter", null)
+					: new MessageRequest(channel, "+1500555" + String.format("%04d", i), "Hello", null, null));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public List<MessageResponse> sendBulkMessage() {
+		return messagingService.sendBulkMessage(requests);
+	}
+}
@@ -0,0 +1,63 @@
+package com.nonstop.twilio.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// loopback stand-in for the Graph API and SendGrid endpoints, so provider code runs its real http path
+public class LocalProviderServer implements AutoCloseable {
+
+	private static final byte[] GRAPH_RESPONSE =
+			"{\"recipient_id\":\"1254477777772919\",\"message_id\":\"mid.benchmark\"}".getBytes(StandardCharsets.UTF_8);
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	public LocalProviderServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	public String getBaseUrl() {
+		return "http://" + getHost();
+	}
+
+	public String getHost() {
+		return "127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (InputStream body = exchange.getRequestBody()) {
+			body.transferTo(OutputStream.nullOutputStream());
+		}
+
+		if (exchange.getRequestURI().getPath().endsWith("/mail/send")) {
+			exchange.getResponseHeaders().add("X-Message-Id", "sg-benchmark");
+			exchange.sendResponseHeaders(202, -1);
+		} else {
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, GRAPH_RESPONSE.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(GRAPH_RESPONSE);
+			}
+		}
+		exchange.close();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,76 @@
+package com.nonstop.twilio.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.MessagingService;
+
+// what a single send costs on top of the provider: routing, resilience, metrics and the idempotency lookup
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessagingServiceBenchmark {
+
+	@Param({ "SMS", "EMAIL" })
+	private MessageChannel channel;
+
+	@Param({ "false", "true" })
+	private boolean idempotencyKey;
+
+	private final AtomicLong keys = new AtomicLong();
+
+	private AnnotationConfigApplicationContext context;
+	private MessagingService messagingService;
+
+	@Setup
+	public void setUp() {
+		context = BenchmarkContexts.messaging(0, Map.of("messaging.rate-limit.enabled", "false"));
+		messagingService = context.getBean(MessagingService.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public MessageResponse sendMessage() {
+		return messagingService.sendMessage(nextRequest());
+	}
+
+	@Benchmark
+	public MessageResponse sendMessageAsync() {
+		return messagingService.sendMessageAsync(nextRequest()).block();
+	}
+
+	private MessageRequest nextRequest() {
+		MessageRequest request = channel == MessageChannel.EMAIL
+				? new MessageRequest(channel, "user@example.com", "Hello from the benchmark", "Benchmark", null)
+				: new MessageRequest(channel, "+15005550006", "Hello from the benchmark", null, null);
+		if (idempotencyKey) {
+			request.setIdempotencyKey("benchmark-" + keys.incrementAndGet());
+		}
+		return request;
+	}
+}
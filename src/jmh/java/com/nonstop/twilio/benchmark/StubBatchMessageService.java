@@ -0,0 +1,40 @@
+package com.nonstop.twilio.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.BatchMessageService;
+
+// batches requests by subject like the email provider does, one simulated provider call per batch
+public class StubBatchMessageService extends StubMessageService implements BatchMessageService {
+
+	private final int maxBatchSize;
+
+	public StubBatchMessageService(MessageChannel channel, long latencyMicros, int maxBatchSize) {
+		super(channel, latencyMicros);
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	public Object getBatchKey(MessageRequest request) {
+		return request.getSubject();
+	}
+
+	@Override
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	@Override
+	public List<MessageResponse> sendBatch(List<MessageRequest> requests) {
+		simulateLatency();
+		List<MessageResponse> responses = new ArrayList<>(requests.size());
+		for (MessageRequest request : requests) {
+			responses.add(respond(request));
+		}
+		return responses;
+	}
+}
@@ -0,0 +1,50 @@
+package com.nonstop.twilio.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.MessageService;
+
+import reactor.core.publisher.Mono;
+
+// answers every send with a fixed success after an optional simulated provider latency
+public class StubMessageService implements MessageService {
+
+	private final MessageChannel channel;
+	private final long latencyNanos;
+
+	public StubMessageService(MessageChannel channel, long latencyMicros) {
+		this.channel = channel;
+		this.latencyNanos = latencyMicros * 1000;
+	}
+
+	@Override
+	public MessageResponse sendMessage(MessageRequest request) {
+		simulateLatency();
+		return respond(request);
+	}
+
+	@Override
+	public Mono<MessageResponse> sendMessageAsync(MessageRequest request) {
+		Mono<MessageResponse> response = Mono.fromSupplier(() -> respond(request));
+		return latencyNanos > 0 ? Mono.delay(Duration.ofNanos(latencyNanos)).then(response) : response;
+	}
+
+	@Override
+	public boolean supports(MessageChannel channel) {
+		return this.channel == channel;
+	}
+
+	protected MessageResponse respond(MessageRequest request) {
+		return new MessageResponse(true, "sent", "stub-id", channel, request.getRecipient());
+	}
+
+	protected void simulateLatency() {
+		if (latencyNanos > 0) {
+			LockSupport.parkNanos(latencyNanos);
+		}
+	}
+}
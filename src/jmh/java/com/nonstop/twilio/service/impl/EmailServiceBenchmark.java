@@ -0,0 +1,78 @@
+package com.nonstop.twilio.service.impl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.nonstop.twilio.benchmark.BenchmarkContexts;
+import com.nonstop.twilio.benchmark.LocalProviderServer;
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.MessageChannel;
+
+// recipient validation, mail building and serialization, and a full send to a loopback SendGrid
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailServiceBenchmark {
+
+	private final MessageRequest request = new MessageRequest(MessageChannel.EMAIL, "first.last+tag@mail.example.com",
+			"Hello from the benchmark", "Benchmark", "<p>Hello from the <b>benchmark</b></p>");
+
+	private LocalProviderServer server;
+	private AnnotationConfigApplicationContext context;
+	private EmailService service;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new LocalProviderServer();
+		context = BenchmarkContexts.providers(server);
+		service = context.getBean(EmailService.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+		server.close();
+	}
+
+	@Benchmark
+	public boolean validateValidEmail() {
+		return service.isValidEmail(request.getRecipient());
+	}
+
+	@Benchmark
+	public boolean validateInvalidEmail() {
+		return service.isValidEmail("first.last@mail");
+	}
+
+	@Benchmark
+	public Object batchKey() {
+		return service.getBatchKey(request);
+	}
+
+	@Benchmark
+	public String buildMail() throws IOException {
+		return service.mailSendRequest(service.buildMail(request, request.getRecipient())).getBody();
+	}
+
+	@Benchmark
+	public MessageResponse sendMessage() {
+		return service.sendMessage(request);
+	}
+}
@@ -0,0 +1,64 @@
+package com.nonstop.twilio.service.impl;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.nonstop.twilio.benchmark.BenchmarkContexts;
+import com.nonstop.twilio.benchmark.LocalProviderServer;
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.MessageChannel;
+
+// payload building on its own and a full send through WebClient to a loopback Graph API
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FacebookMessengerServiceBenchmark {
+
+	private final MessageRequest request =
+			new MessageRequest(MessageChannel.FACEBOOK, "1254477777772919", "Hello from the benchmark", null, null);
+
+	private LocalProviderServer server;
+	private AnnotationConfigApplicationContext context;
+	private FacebookMessengerService service;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new LocalProviderServer();
+		context = BenchmarkContexts.providers(server);
+		service = context.getBean(FacebookMessengerService.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+		server.close();
+	}
+
+	@Benchmark
+	public Map<String, Object> createMessagePayload() {
+		return service.createMessagePayload(request.getRecipient(), request.getMessage());
+	}
+
+	@Benchmark
+	public MessageResponse sendMessage() {
+		return service.sendMessage(request);
+	}
+}
@@ -0,0 +1,49 @@
+package com.nonstop.twilio.config;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// httpcomponents.httpclient.pool.* gauges for an HttpClient 4 pool, tagged with httpclient=<name>. the same
+// meters Micrometer's own binder registers, which is deprecated along with HttpClient 4 support; the
+// SendGrid and Twilio SDKs are still built on HttpClient 4
+class ConnectionPoolMetrics implements MeterBinder {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final String name;
+
+    ConnectionPoolMetrics(PoolingHttpClientConnectionManager connectionManager, String name) {
+        this.connectionManager = connectionManager;
+        this.name = name;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("httpcomponents.httpclient.pool.total.max", connectionManager, m -> m.getTotalStats().getMax())
+                .description("The configured maximum number of allowed persistent connections for all routes.")
+                .tag("httpclient", name)
+                .register(registry);
+        Gauge.builder("httpcomponents.httpclient.pool.total.connections", connectionManager,
+                        m -> m.getTotalStats().getAvailable())
+                .description("The number of persistent and available connections for all routes.")
+                .tags("httpclient", name, "state", "available")
+                .register(registry);
+        Gauge.builder("httpcomponents.httpclient.pool.total.connections", connectionManager,
+                        m -> m.getTotalStats().getLeased())
+                .description("The number of persistent and leased connections for all routes.")
+                .tags("httpclient", name, "state", "leased")
+                .register(registry);
+        Gauge.builder("httpcomponents.httpclient.pool.total.pending", connectionManager,
+                        m -> m.getTotalStats().getPending())
+                .description("The number of connection requests being blocked awaiting a free connection for all routes.")
+                .tag("httpclient", name)
+                .register(registry);
+        Gauge.builder("httpcomponents.httpclient.pool.route.max.default", connectionManager,
+                        PoolingHttpClientConnectionManager::getDefaultMaxPerRoute)
+                .description("The configured default maximum number of allowed persistent connections per route.")
+                .tag("httpclient", name)
+                .register(registry);
+    }
+}
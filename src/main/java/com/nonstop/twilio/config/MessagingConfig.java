@@ -1,33 +1,100 @@
 package com.nonstop.twilio.config;
 
-import javax.annotation.PostConstruct;
+import java.time.Duration;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 
-import com.twilio.Twilio;
+import com.nonstop.twilio.service.BulkJobStore;
+import com.nonstop.twilio.service.impl.InMemoryBulkJobStore;
+
+import io.netty.channel.ChannelOption;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 public class MessagingConfig {
     
-    @Value("${twilio.account-sid}")
-    private String twilioAccountSid;
+    @Value("${facebook.http.max-connections:500}")
+    private int graphMaxConnections;
+    
+    @Value("${facebook.http.pending-acquire-max-count:5000}")
+    private int graphPendingAcquireMaxCount;
+    
+    @Value("${facebook.http.pending-acquire-timeout-ms:5000}")
+    private long graphPendingAcquireTimeoutMs;
+    
+    @Value("${facebook.http.max-idle-time-ms:30000}")
+    private long graphMaxIdleTimeMs;
+    
+    @Value("${facebook.http.max-life-time-ms:300000}")
+    private long graphMaxLifeTimeMs;
+    
+    @Value("${facebook.http.connect-timeout-ms:5000}")
+    private int graphConnectTimeoutMs;
+    
+    @Value("${facebook.http.response-timeout-ms:10000}")
+    private long graphResponseTimeoutMs;
     
-    @Value("${twilio.auth-token}")
-    private String twilioAuthToken;
+    @Value("${facebook.http.http2-enabled:true}")
+    private boolean graphHttp2Enabled;
     
-    @PostConstruct
-    public void initTwilio() {
-        Twilio.init(twilioAccountSid, twilioAuthToken);
+    @Value("${facebook.http.compression-enabled:false}")
+    private boolean graphCompressionEnabled;
+    
+    // connection pool for the Graph API, pool gauges are published as reactor.netty.connection.provider.*
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider graphApiConnectionProvider() {
+        return ConnectionProvider.builder("graph-api")
+                .maxConnections(graphMaxConnections)
+                .pendingAcquireMaxCount(graphPendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(graphPendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(graphMaxIdleTimeMs))
+                .maxLifeTime(Duration.ofMillis(graphMaxLifeTimeMs))
+                .evictInBackground(Duration.ofMillis(graphMaxIdleTimeMs))
+                .metrics(true)
+                .build();
     }
     
     // for making http requests (we need it for facebook messenger)
     @Bean
-    public WebClient webClient() {
+    public WebClient webClient(ConnectionProvider graphApiConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(graphApiConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, graphConnectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(graphResponseTimeoutMs))
+                .compress(graphCompressionEnabled)
+                .metrics(true, uri -> uri);
+        
+        // h2 is negotiated over ALPN, servers without it fall back to http/1.1
+        if (graphHttp2Enabled) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        
         return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(2 * 1024 * 1024))
                 .build();
     }
+    
+    // bounded pool that blocking provider SDKs (Twilio, SendGrid) run on for the async send path
+    @Bean(destroyMethod = "dispose")
+    public Scheduler messagingOffloadScheduler(
+            @Value("${messaging.offload.max-threads:64}") int maxThreads,
+            @Value("${messaging.offload.max-queued-tasks:10000}") int maxQueuedTasks) {
+        return Schedulers.newBoundedElastic(maxThreads, maxQueuedTasks, "messaging-offload");
+    }
+    
+    // default job store for async bulk sends, define another BulkJobStore bean to replace it
+    @Bean
+    @ConditionalOnMissingBean(BulkJobStore.class)
+    public BulkJobStore bulkJobStore(@Value("${messaging.jobs.retention-minutes:60}") long retentionMinutes) {
+        return new InMemoryBulkJobStore(Duration.ofMinutes(retentionMinutes));
+    }
 }
@@ -0,0 +1,89 @@
+package com.nonstop.twilio.config;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.sendgrid.Client;
+import com.sendgrid.SendGrid;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// one SendGrid client for the whole app, backed by a pooled keep-alive http client
+@Configuration
+public class SendGridConfig {
+    
+    @Value("${sendgrid.api-key}")
+    private String sendGridApiKey;
+    
+    @Value("${sendgrid.http.max-connections:200}")
+    private int maxConnections;
+    
+    @Value("${sendgrid.http.max-connections-per-route:100}")
+    private int maxConnectionsPerRoute;
+    
+    @Value("${sendgrid.http.keep-alive-ms:30000}")
+    private long keepAliveMs;
+    
+    @Value("${sendgrid.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+    
+    @Value("${sendgrid.http.read-timeout-ms:10000}")
+    private int readTimeoutMs;
+    
+    // how long a send waits for a free pooled connection
+    @Value("${sendgrid.http.connection-request-timeout-ms:5000}")
+    private int connectionRequestTimeoutMs;
+    
+    @Bean
+    public PoolingHttpClientConnectionManager sendGridConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                keepAliveMs, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+        return connectionManager;
+    }
+    
+    @Bean
+    public CloseableHttpClient sendGridHttpClient(PoolingHttpClientConnectionManager sendGridConnectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .setConnectionRequestTimeout(connectionRequestTimeoutMs)
+                .build();
+        
+        // use the server's keep-alive hint but never keep a connection longer than configured
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMs) : keepAliveMs;
+        };
+        
+        return HttpClients.custom()
+                .setConnectionManager(sendGridConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+    
+    @Bean
+    public SendGrid sendGrid(CloseableHttpClient sendGridHttpClient) {
+        return new SendGrid(sendGridApiKey, new Client(sendGridHttpClient));
+    }
+    
+    // exposes httpcomponents.httpclient.pool.* metrics tagged with httpclient=sendgrid
+    @Bean
+    public MeterBinder sendGridConnectionPoolMetrics(PoolingHttpClientConnectionManager sendGridConnectionManager) {
+        return new ConnectionPoolMetrics(sendGridConnectionManager, "sendgrid");
+    }
+}
@@ -0,0 +1,111 @@
+package com.nonstop.twilio.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.twilio.Twilio;
+import com.twilio.http.NetworkHttpClient;
+import com.twilio.http.TwilioRestClient;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// Twilio rest client on a pooled http client, shared by the SMS and WhatsApp services
+@Configuration
+public class TwilioConfig {
+    
+    @Value("${twilio.account-sid}")
+    private String twilioAccountSid;
+    
+    @Value("${twilio.auth-token}")
+    private String twilioAuthToken;
+    
+    @Value("${twilio.http.max-connections:200}")
+    private int maxConnections;
+    
+    @Value("${twilio.http.max-connections-per-route:100}")
+    private int maxConnectionsPerRoute;
+    
+    @Value("${twilio.http.keep-alive-ms:30000}")
+    private long keepAliveMs;
+    
+    @Value("${twilio.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+    
+    @Value("${twilio.http.read-timeout-ms:15000}")
+    private int readTimeoutMs;
+    
+    @Value("${twilio.http.connection-request-timeout-ms:5000}")
+    private int connectionRequestTimeoutMs;
+    
+    // threads available to Creator.createAsync, which caps the number of concurrent async sends
+    @Value("${twilio.async.max-threads:64}")
+    private int asyncMaxThreads;
+    
+    private ExecutorService asyncExecutor;
+    
+    @Bean
+    public PoolingHttpClientConnectionManager twilioConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                keepAliveMs, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+        return connectionManager;
+    }
+    
+    @Bean
+    public TwilioRestClient twilioRestClient(PoolingHttpClientConnectionManager twilioConnectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .setConnectionRequestTimeout(connectionRequestTimeoutMs)
+                .build();
+        
+        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create()
+                .setConnectionManager(twilioConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS);
+        
+        TwilioRestClient client = new TwilioRestClient.Builder(twilioAccountSid, twilioAuthToken)
+                .httpClient(new NetworkHttpClient(httpClientBuilder))
+                .build();
+        
+        // anything still going through the static Twilio API shares the same client
+        Twilio.init(twilioAccountSid, twilioAuthToken);
+        Twilio.setRestClient(client);
+        return client;
+    }
+    
+    // Twilio runs createAsync on its global executor, replace it with a bounded one.
+    // not a bean on purpose, an Executor bean would switch off Spring Boot's own task executor
+    @PostConstruct
+    public void initAsyncExecutor() {
+        asyncExecutor = new ThreadPoolExecutor(asyncMaxThreads, asyncMaxThreads,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new CustomizableThreadFactory("twilio-async-"));
+        Twilio.setExecutorService(asyncExecutor);
+    }
+    
+    @PreDestroy
+    public void shutdownAsyncExecutor() {
+        asyncExecutor.shutdown();
+    }
+    
+    @Bean
+    public MeterBinder twilioConnectionPoolMetrics(PoolingHttpClientConnectionManager twilioConnectionManager) {
+        return new ConnectionPoolMetrics(twilioConnectionManager, "twilio");
+    }
+}
@@ -1,5 +1,8 @@
 package com.nonstop.twilio.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -7,53 +10,289 @@ import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.nonstop.twilio.dto.BulkJobResultsPage;
+import com.nonstop.twilio.dto.BulkJobStatus;
+import com.nonstop.twilio.dto.MessageDeliveryStatus;
 import com.nonstop.twilio.dto.MessageRequest;
 import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.dto.MessageTemplate;
+import com.nonstop.twilio.dto.ScheduledMessage;
+import com.nonstop.twilio.dto.SuppressionEntry;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.BulkJobService;
+import com.nonstop.twilio.service.BulkStreamService;
+import com.nonstop.twilio.service.DeliveryStatusIndex;
 import com.nonstop.twilio.service.MessagingService;
+import com.nonstop.twilio.service.schedule.ScheduledSendService;
+import com.nonstop.twilio.service.suppression.SuppressionService;
+import com.nonstop.twilio.service.template.TemplateService;
+import com.nonstop.twilio.service.webhook.FacebookWebhookService;
+import com.nonstop.twilio.service.webhook.SendGridEventWebhookService;
+import com.nonstop.twilio.service.webhook.TwilioStatusCallbackService;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/api/messaging")
 @CrossOrigin(origins = "*")
 public class MessagingController {
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    
+    private static final String FACEBOOK_SIGNATURE_HEADER = "X-Hub-Signature-256";
+    
+    private static final String TWILIO_SIGNATURE_HEADER = "X-Twilio-Signature";
+    
+    private static final String SENDGRID_SIGNATURE_HEADER = "X-Twilio-Email-Event-Webhook-Signature";
+    
+    private static final String SENDGRID_TIMESTAMP_HEADER = "X-Twilio-Email-Event-Webhook-Timestamp";
+
     @Value("${facebook.verify-token}")
     private String webhookVerifyToken;
     
     @Autowired
     private MessagingService messagingService;
     
+    @Autowired
+    private BulkJobService bulkJobService;
+    
+    @Autowired
+    private TemplateService templateService;
+    
+    @Autowired
+    private BulkStreamService bulkStreamService;
+    
+    @Autowired
+    private FacebookWebhookService facebookWebhookService;
+    
+    @Autowired
+    private TwilioStatusCallbackService twilioStatusCallbackService;
+    
+    @Autowired
+    private SendGridEventWebhookService sendGridEventWebhookService;
+    
+    @Autowired
+    private SuppressionService suppressionService;
+    
+    @Autowired
+    private DeliveryStatusIndex deliveryStatusIndex;
+    
+    @Autowired
+    private ScheduledSendService scheduledSendService;
+    
+    // the servlet thread is released while the provider call is in flight
     @PostMapping("/send")
-    public ResponseEntity<MessageResponse> sendMessage(@Valid @RequestBody MessageRequest request) {
-        MessageResponse response = messagingService.sendMessage(request);
+    public Mono<ResponseEntity<MessageResponse>> sendMessage(
+            @Valid @RequestBody MessageRequest request,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
         
-        if (response.isSuccess()) {
-            return ResponseEntity.ok(response);
-        } else {
-            return ResponseEntity.badRequest().body(response);
+        if (idempotencyKey != null && request.getIdempotencyKey() == null) {
+            request.setIdempotencyKey(idempotencyKey);
         }
+        
+        return messagingService.sendMessageAsync(request)
+                .map(response -> {
+                    if (response.success()) {
+                        return ResponseEntity.ok(response);
+                    } else {
+                        return ResponseEntity.badRequest().body(response);
+                    }
+                });
     }
     
+    // with async=true the batch runs as a background job and only the job status is returned
     @PostMapping("/send-bulk")
-    public ResponseEntity<List<MessageResponse>> sendBulkMessage(
-            @RequestBody List<MessageRequest> requests) {
+    public ResponseEntity<?> sendBulkMessage(
+            @RequestBody List<MessageRequest> requests,
+            @RequestParam(value = "timeoutMs", required = false) Long timeoutMs,
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
         
         if (requests == null || requests.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
         
-        List<MessageResponse> responses = messagingService.sendBulkMessage(requests);
+        // a key for the whole batch covers each message by its position
+        if (idempotencyKey != null) {
+            for (int i = 0; i < requests.size(); i++) {
+                if (requests.get(i).getIdempotencyKey() == null) {
+                    requests.get(i).setIdempotencyKey(idempotencyKey + ":" + i);
+                }
+            }
+        }
+        
+        if (async) {
+            BulkJobStatus job = bulkJobService.submit(requests);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header("Location", "/api/messaging/jobs/" + job.getJobId())
+                    .body(job);
+        }
+        
+        List<MessageResponse> responses = timeoutMs != null
+                ? messagingService.sendBulkMessage(requests, Duration.ofMillis(timeoutMs))
+                : messagingService.sendBulkMessage(requests);
         return ResponseEntity.ok(responses);
     }
     
+    // newline-delimited JSON in and out, results are streamed back as sends finish (in completion order,
+    // each line carries the index of its request)
+    @PostMapping(value = "/send-bulk", consumes = NDJSON_VALUE, produces = NDJSON_VALUE)
+    public void sendBulkMessageStream(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON_VALUE);
+        bulkStreamService.stream(body, response.getOutputStream());
+    }
+    
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<BulkJobStatus> getJobStatus(@PathVariable String jobId) {
+        return bulkJobService.getStatus(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    @GetMapping("/jobs/{jobId}/results")
+    public ResponseEntity<BulkJobResultsPage> getJobResults(
+            @PathVariable String jobId,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "100") int size) {
+        
+        if (page < 0 || size < 1 || size > 1000) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        return bulkJobService.getStatus(jobId)
+                .map(status -> ResponseEntity.ok(new BulkJobResultsPage(
+                        jobId,
+                        page,
+                        size,
+                        status.getTotalMessages(),
+                        bulkJobService.getResults(jobId, page, size)
+                )))
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    // delivery updates of the job's SMS and WhatsApp messages, from Twilio status callbacks
+    @GetMapping("/jobs/{jobId}/delivery")
+    public ResponseEntity<List<MessageDeliveryStatus>> getJobDeliveryStatus(@PathVariable String jobId) {
+        if (bulkJobService.getStatus(jobId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(deliveryStatusIndex.findByJob(jobId));
+    }
+    
+    @GetMapping("/messages/{messageId}/delivery")
+    public ResponseEntity<MessageDeliveryStatus> getDeliveryStatus(@PathVariable String messageId) {
+        return deliveryStatusIndex.find(messageId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJobEvents(
+            @PathVariable String jobId,
+            @RequestParam(value = "timeoutMs", defaultValue = "600000") long timeoutMs) {
+        return bulkJobService.subscribe(jobId, timeoutMs);
+    }
+    
+    // messages sent with a sendAt or delayMs, the schedule id is the messageId of the send response
+    @GetMapping("/scheduled/{scheduleId}")
+    public ResponseEntity<ScheduledMessage> getScheduledMessage(@PathVariable String scheduleId) {
+        return scheduledSendService.find(scheduleId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    @DeleteMapping("/scheduled/{scheduleId}")
+    public ResponseEntity<Void> cancelScheduledMessage(@PathVariable String scheduleId) {
+        return scheduledSendService.cancel(scheduleId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+    
+    // templates are referenced from MessageRequest.templateId, bodies then only carry the variables
+    @PostMapping("/templates")
+    public ResponseEntity<?> registerTemplate(@Valid @RequestBody MessageTemplate template) {
+        try {
+            MessageTemplate registered = templateService.register(template);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header("Location", "/api/messaging/templates/" + registered.getId())
+                    .body(registered);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/templates/{templateId}")
+    public ResponseEntity<MessageTemplate> getTemplate(@PathVariable String templateId) {
+        return templateService.find(templateId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    @DeleteMapping("/templates/{templateId}")
+    public ResponseEntity<Void> deleteTemplate(@PathVariable String templateId) {
+        return templateService.remove(templateId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+    
+    // recipients that are not sent to any more, messages to them fail with SUPPRESSED without a provider call
+    @PostMapping("/suppressions")
+    public ResponseEntity<?> addSuppressions(@RequestBody List<SuppressionEntry> entries) {
+        if (!suppressionService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Suppression is disabled"));
+        }
+        for (SuppressionEntry entry : entries) {
+            if (entry.getChannel() == null || entry.getRecipient() == null || entry.getRecipient().isBlank()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Every entry needs a channel and a recipient"));
+            }
+        }
+        
+        int added = 0;
+        for (SuppressionEntry entry : entries) {
+            if (suppressionService.suppress(entry.getChannel(), entry.getRecipient(), entry.getReason())) {
+                added++;
+            }
+        }
+        return ResponseEntity.ok(Map.of("received", entries.size(), "added", added));
+    }
+    
+    @GetMapping("/suppressions")
+    public ResponseEntity<SuppressionEntry> getSuppression(
+            @RequestParam MessageChannel channel,
+            @RequestParam String recipient) {
+        return suppressionService.find(channel, recipient)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    @DeleteMapping("/suppressions")
+    public ResponseEntity<Void> deleteSuppression(
+            @RequestParam MessageChannel channel,
+            @RequestParam String recipient) {
+        return suppressionService.unsuppress(channel, recipient)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+    
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> healthCheck() {
         List<com.nonstop.twilio.enums.MessageChannel> supportedChannels = messagingService.getSupportedChannels();
@@ -61,7 +300,9 @@ public class MessagingController {
         return ResponseEntity.ok(Map.of(
             "status", "Messaging service is running",
             "supportedChannels", supportedChannels,
-            "totalChannels", supportedChannels.size()
+            "totalChannels", supportedChannels.size(),
+            "circuitBreakers", messagingService.getCircuitBreakerStates(),
+            "senders", messagingService.getSenderHealth()
         ));
     }
     
@@ -84,9 +325,41 @@ public class MessagingController {
         return ResponseEntity.status(403).body("Forbidden");
     }
     
+    // raw bytes, the signature is computed over the body exactly as it was sent
     @PostMapping("/webhook/facebook")
-    public ResponseEntity<String> handleFacebookWebhook(@RequestBody Map<String, Object> payload) {
-        // to handle incoming facebook messages
-        return ResponseEntity.ok("OK");
+    public ResponseEntity<String> handleFacebookWebhook(
+            @RequestBody byte[] body,
+            @RequestHeader(value = FACEBOOK_SIGNATURE_HEADER, required = false) String signature) {
+        
+        return switch (facebookWebhookService.accept(body, signature)) {
+            case ACCEPTED -> ResponseEntity.ok("OK");
+            case INVALID_SIGNATURE -> ResponseEntity.status(HttpStatus.FORBIDDEN).body("Forbidden");
+            // facebook retries callbacks that were not acknowledged
+            case BUFFER_FULL -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Busy");
+        };
+    }
+    
+    // twilio message status callback, set as StatusCallback when twilio.status-callback-url is configured
+    @PostMapping(value = "/webhook/twilio/status", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<Void> handleTwilioStatusCallback(
+            @RequestParam Map<String, String> params,
+            @RequestHeader(value = TWILIO_SIGNATURE_HEADER, required = false) String signature,
+            HttpServletRequest request) {
+        
+        return twilioStatusCallbackService.handle(params, signature, request.getRequestURL().toString())
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
+    
+    // sendgrid event webhook, bounces, spam reports and unsubscribes go on the suppression list
+    @PostMapping(value = "/webhook/sendgrid/events", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Void> handleSendGridEvents(
+            @RequestBody byte[] body,
+            @RequestHeader(value = SENDGRID_SIGNATURE_HEADER, required = false) String signature,
+            @RequestHeader(value = SENDGRID_TIMESTAMP_HEADER, required = false) String timestamp) {
+        
+        return sendGridEventWebhookService.handle(body, signature, timestamp)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.status(HttpStatus.FORBIDDEN).build();
     }
-}
\ No newline at end of file
+}
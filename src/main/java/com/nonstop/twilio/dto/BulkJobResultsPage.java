@@ -0,0 +1,18 @@
+package com.nonstop.twilio.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkJobResultsPage {
+    private String jobId;
+    private int page;
+    private int size;
+    private int totalMessages;
+    private List<MessageResponse> results; // null entries are messages that are still in flight
+}
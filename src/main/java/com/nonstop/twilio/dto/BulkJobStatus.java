@@ -0,0 +1,23 @@
+package com.nonstop.twilio.dto;
+
+import java.time.Instant;
+
+import com.nonstop.twilio.enums.BulkJobState;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkJobStatus {
+    private String jobId;
+    private BulkJobState state;
+    private int totalMessages;
+    private int completedMessages;
+    private int successfulMessages;
+    private int failedMessages;
+    private Instant createdAt;
+    private Instant finishedAt;
+}
@@ -0,0 +1,40 @@
+package com.nonstop.twilio.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.nonstop.twilio.enums.InboundEventType;
+import com.nonstop.twilio.enums.MessageChannel;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// one event from a provider webhook, fields that do not apply to the type are left null
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class InboundEvent {
+    private MessageChannel channel;
+    private InboundEventType type;
+    
+    // for facebook the page the event belongs to
+    private String accountId;
+    private String senderId;
+    private String recipientId;
+    private long timestamp;
+    
+    private String messageId;
+    private String text;
+    
+    // postback payload, or the opt-in ref / status
+    private String payload;
+    
+    // delivery and read receipts cover everything up to this timestamp
+    private Long watermark;
+    private List<String> deliveredMessageIds;
+    
+    // true when the webhook carried a signature we checked. handlers that change what we send skip the rest
+    @JsonIgnore
+    private boolean verified;
+}
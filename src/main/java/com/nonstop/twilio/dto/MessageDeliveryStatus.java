@@ -0,0 +1,43 @@
+package com.nonstop.twilio.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.nonstop.twilio.enums.DeliveryStatus;
+import com.nonstop.twilio.enums.MessageChannel;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// where a sent message is now and how it got there, from the provider's status callbacks
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageDeliveryStatus {
+    private String messageId;
+    private MessageChannel channel;
+    private String recipient;
+    
+    // only set for messages sent as part of a bulk job
+    private String jobId;
+    
+    private DeliveryStatus status;
+    private String errorCode;
+    private Instant updatedAt;
+    
+    // in the order the updates arrived
+    private List<Transition> timeline;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Transition {
+        private DeliveryStatus status;
+        private Instant at;
+        private String errorCode;
+    }
+}
@@ -1,9 +1,13 @@
 package com.nonstop.twilio.dto;
 
+import java.time.Instant;
+import java.util.Map;
+
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 
 import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.enums.MessagePriority;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -26,4 +30,22 @@ public class MessageRequest {
     // optional fields for email
     private String subject;
     private String htmlContent;
+    
+    // optional, a retry with the same key gets the original response instead of sending again
+    private String idempotencyKey;
+    
+    // optional, message/subject/htmlContent are rendered from a registered template and these variables
+    private String templateId;
+    private Map<String, String> variables;
+    
+    // optional, NORMAL for single sends and BULK for bulk sends when not given
+    private MessagePriority priority;
+    
+    // optional, the message is held back until sendAt (ISO-8601 with an offset) or for delayMs from now
+    private Instant sendAt;
+    private Long delayMs;
+    
+    public MessageRequest(MessageChannel channel, String recipient, String message, String subject, String htmlContent) {
+        this(channel, recipient, message, subject, htmlContent, null, null, null, null, null, null);
+    }
 }
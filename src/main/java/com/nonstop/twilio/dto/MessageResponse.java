@@ -1,18 +1,21 @@
 package com.nonstop.twilio.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.nonstop.twilio.enums.FailureType;
 import com.nonstop.twilio.enums.MessageChannel;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+// immutable, so one response can be handed to every caller that shares a send (coalesced messages,
+// repeated idempotency keys) without copying
+public record MessageResponse(
+        boolean success,
+        String message,
+        String messageId,
+        MessageChannel channel,
+        String recipient,
+        // only set on failures
+        @JsonInclude(JsonInclude.Include.NON_NULL) FailureType failureType) {
 
-@Data
-@NoArgsConstructor
-@AllArgsConstructor
-public class MessageResponse {
-    private boolean success;
-    private String message;
-    private String messageId;
-    private MessageChannel channel;
-    private String recipient;
+    public MessageResponse(boolean success, String message, String messageId, MessageChannel channel, String recipient) {
+        this(success, message, messageId, channel, recipient, success ? null : FailureType.PERMANENT);
+    }
 }
@@ -0,0 +1,24 @@
+package com.nonstop.twilio.dto;
+
+import javax.validation.constraints.NotBlank;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// placeholders are written as {{name}} and filled from MessageRequest.variables
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageTemplate {
+    
+    @NotBlank(message = "Template id is required")
+    private String id;
+    
+    @NotBlank(message = "Message is required")
+    private String message;
+    
+    // optional fields for email
+    private String subject;
+    private String htmlContent;
+}
@@ -0,0 +1,17 @@
+package com.nonstop.twilio.dto;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// a message waiting for its sendAt, request is what will be sent
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduledMessage {
+    private String id;
+    private Instant sendAt;
+    private MessageRequest request;
+}
@@ -0,0 +1,21 @@
+package com.nonstop.twilio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// how one sender (number, messaging service, api key) is doing as seen by the router
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SenderHealth {
+    private String senderId;
+    private String provider;
+
+    // moving averages, both decay while the sender is idle
+    private double latencyMs;
+    private double errorRate;
+
+    private int inFlight;
+    private boolean healthy;
+}
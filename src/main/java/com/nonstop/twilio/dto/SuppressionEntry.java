@@ -0,0 +1,24 @@
+package com.nonstop.twilio.dto;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.enums.SuppressionReason;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// a recipient we do not send to on a channel. the index only keeps a fingerprint of the recipient,
+// so the recipient is whatever was asked about
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SuppressionEntry {
+    private MessageChannel channel;
+    private String recipient;
+    private SuppressionReason reason;
+    private Instant since;
+}
@@ -0,0 +1,6 @@
+package com.nonstop.twilio.enums;
+
+public enum BulkJobState {
+    RUNNING,
+    COMPLETED
+}
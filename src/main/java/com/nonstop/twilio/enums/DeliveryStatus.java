@@ -0,0 +1,47 @@
+package com.nonstop.twilio.enums;
+
+// Twilio message status, in the order a message normally goes through them. callbacks can arrive out of
+// order, a status only replaces the current one when it is at least as far along
+public enum DeliveryStatus {
+    UNKNOWN(0),
+    ACCEPTED(1),
+    SCHEDULED(1),
+    QUEUED(2),
+    SENDING(3),
+    SENT(4),
+    CANCELED(5),
+    FAILED(5),
+    UNDELIVERED(5),
+    DELIVERED(5),
+    READ(6);
+
+    private final int progress;
+
+    DeliveryStatus(int progress) {
+        this.progress = progress;
+    }
+
+    public boolean isAtLeast(DeliveryStatus other) {
+        return progress >= other.progress;
+    }
+
+    // the lowercase value Twilio uses in callbacks and on Message.getStatus()
+    public static DeliveryStatus fromTwilio(String value) {
+        if (value == null) {
+            return UNKNOWN;
+        }
+        return switch (value) {
+            case "accepted" -> ACCEPTED;
+            case "scheduled" -> SCHEDULED;
+            case "queued" -> QUEUED;
+            case "sending" -> SENDING;
+            case "sent" -> SENT;
+            case "canceled" -> CANCELED;
+            case "failed" -> FAILED;
+            case "undelivered" -> UNDELIVERED;
+            case "delivered" -> DELIVERED;
+            case "read" -> READ;
+            default -> UNKNOWN;
+        };
+    }
+}
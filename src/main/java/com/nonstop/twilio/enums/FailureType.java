@@ -0,0 +1,13 @@
+package com.nonstop.twilio.enums;
+
+// why a send failed, used to decide whether it is worth retrying
+public enum FailureType {
+    INVALID_REQUEST,  // bad recipient, unsupported channel, 4xx from the provider
+    RATE_LIMITED,     // 429 from the provider or our own rate limiter queue is full
+    TRANSIENT,        // 5xx, connection refused/reset, connect timeout
+    TIMEOUT,          // read timeout or deadline, the provider may or may not have sent the message
+    PERMANENT,        // anything else
+    CIRCUIT_OPEN,     // not attempted, the channel's circuit breaker is open
+    SUPPRESSED,       // not attempted, the recipient opted out, bounced or complained
+    CANCELLED         // not attempted, interrupted or cancelled on our side while waiting to send
+}
@@ -0,0 +1,12 @@
+package com.nonstop.twilio.enums;
+
+// what a webhook callback told us
+public enum InboundEventType {
+    MESSAGE,   // a user wrote to us
+    ECHO,      // a message the page itself sent, echoed back
+    POSTBACK,  // a button or menu item was tapped
+    DELIVERY,  // our messages up to the watermark were delivered
+    READ,      // our messages up to the watermark were read
+    OPTIN,     // the user opted in or out of messages
+    OTHER      // anything we do not parse yet
+}
@@ -13,12 +13,18 @@ public enum MessageChannel {
     
     private final String value;
     
+    // the length narrows it down to one or two candidates, compared without copying or lowercasing the input
     public static MessageChannel fromString(String channel) {
-        for (MessageChannel c : MessageChannel.values()) {
-            if (c.value.equalsIgnoreCase(channel)) {
-                return c;
-            }
+        MessageChannel match = channel == null ? null : switch (channel.length()) {
+            case 3 -> SMS.value.equalsIgnoreCase(channel) ? SMS : null;
+            case 5 -> EMAIL.value.equalsIgnoreCase(channel) ? EMAIL : null;
+            case 8 -> WHATSAPP.value.equalsIgnoreCase(channel) ? WHATSAPP
+                    : FACEBOOK.value.equalsIgnoreCase(channel) ? FACEBOOK : null;
+            default -> null;
+        };
+        if (match == null) {
+            throw new IllegalArgumentException("Unknown channel: " + channel);
         }
-        throw new IllegalArgumentException("Unknown channel: " + channel);
+        return match;
     }
 }
@@ -0,0 +1,8 @@
+package com.nonstop.twilio.enums;
+
+// scheduling lane of a message, see PriorityScheduler
+public enum MessagePriority {
+    TRANSACTIONAL,  // one-time codes, alerts, anything a user is waiting for
+    NORMAL,         // default for single sends
+    BULK            // default for bulk sends and jobs
+}
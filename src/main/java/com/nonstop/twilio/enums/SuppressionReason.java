@@ -0,0 +1,10 @@
+package com.nonstop.twilio.enums;
+
+// why messages to a recipient are not sent any more
+public enum SuppressionReason {
+    OPTED_OUT,          // replied STOP, unsubscribed or turned notifications off
+    HARD_BOUNCE,        // the address does not exist
+    SPAM_COMPLAINT,     // marked one of our emails as spam
+    INVALID_RECIPIENT,  // the provider says the number cannot receive messages, e.g. a landline
+    MANUAL              // added through the api without a reason
+}
@@ -0,0 +1,23 @@
+package com.nonstop.twilio.service;
+
+import java.util.List;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+
+// a message service that can send several compatible requests in one provider call
+public interface BatchMessageService extends MessageService {
+    
+    // requests with equal keys can share a batch, null means the request has to be sent on its own
+    Object getBatchKey(MessageRequest request);
+    
+    int getMaxBatchSize();
+    
+    // returns one response per request, in the same order
+    List<MessageResponse> sendBatch(List<MessageRequest> requests);
+    
+    // same, from one of getSenderIds()
+    default List<MessageResponse> sendBatch(List<MessageRequest> requests, String senderId) {
+        return sendBatch(requests);
+    }
+}
@@ -0,0 +1,134 @@
+package com.nonstop.twilio.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.nonstop.twilio.dto.BulkJobStatus;
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.BulkJobState;
+
+// runs bulk sends as background jobs, progress is kept in the job store and pushed to SSE subscribers
+@Service
+public class BulkJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkJobService.class);
+
+    @Autowired
+    private MessagingService messagingService;
+
+    @Autowired
+    private BulkJobStore bulkJobStore;
+
+    @Autowired
+    private DeliveryStatusIndex deliveryStatusIndex;
+
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    // accepts the batch and returns straight away, the messages are sent in the background
+    public BulkJobStatus submit(List<MessageRequest> requests) {
+        String jobId = UUID.randomUUID().toString();
+        BulkJobStatus status = bulkJobStore.create(jobId, requests.size());
+
+        logger.info("Accepted bulk job {} with {} requests", jobId, requests.size());
+
+        messagingService.sendBulkMessageAsync(requests, (index, response) -> onResult(jobId, index, response))
+                .whenComplete((ignored, e) -> onCompleted(jobId));
+
+        return status;
+    }
+
+    public Optional<BulkJobStatus> getStatus(String jobId) {
+        return bulkJobStore.findStatus(jobId);
+    }
+
+    // a page past the end is empty, also when page * size does not fit in an int
+    public List<MessageResponse> getResults(String jobId, int page, int size) {
+        long offset = (long) page * size;
+        if (offset > Integer.MAX_VALUE) {
+            return List.of();
+        }
+        return bulkJobStore.findResults(jobId, (int) offset, size);
+    }
+
+    // streams "result" events for every finished message and a final "completed" event
+    public SseEmitter subscribe(String jobId, long timeoutMs) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        BulkJobStatus status = bulkJobStore.findStatus(jobId).orElse(null);
+        if (status == null) {
+            emitter.completeWithError(new IllegalArgumentException("Unknown job: " + jobId));
+            return emitter;
+        }
+
+        List<SseEmitter> jobSubscribers = subscribers.computeIfAbsent(jobId, id -> new CopyOnWriteArrayList<>());
+        jobSubscribers.add(emitter);
+        emitter.onCompletion(() -> jobSubscribers.remove(emitter));
+        emitter.onTimeout(() -> jobSubscribers.remove(emitter));
+        emitter.onError(e -> jobSubscribers.remove(emitter));
+
+        send(emitter, "progress", status);
+
+        // the job may have finished while we were registering
+        if (bulkJobStore.findStatus(jobId).map(s -> s.getState() == BulkJobState.COMPLETED).orElse(true)) {
+            jobSubscribers.remove(emitter);
+            subscribers.computeIfPresent(jobId, (id, list) -> list.isEmpty() ? null : list);
+            finish(emitter, jobId);
+        }
+        return emitter;
+    }
+
+    private void onResult(String jobId, int index, MessageResponse response) {
+        bulkJobStore.recordResult(jobId, index, response);
+        if (response.success()) {
+            // later delivery updates for this message can then be looked up by job
+            deliveryStatusIndex.assignJob(response.messageId(), jobId);
+        }
+
+        List<SseEmitter> jobSubscribers = subscribers.get(jobId);
+        if (jobSubscribers != null && !jobSubscribers.isEmpty()) {
+            Map<String, Object> event = Map.of("index", index, "response", response);
+            for (SseEmitter emitter : jobSubscribers) {
+                send(emitter, "result", event);
+            }
+        }
+    }
+
+    private void onCompleted(String jobId) {
+        bulkJobStore.markCompleted(jobId);
+        logger.info("Bulk job {} completed", jobId);
+
+        List<SseEmitter> jobSubscribers = subscribers.remove(jobId);
+        if (jobSubscribers != null) {
+            for (SseEmitter emitter : jobSubscribers) {
+                finish(emitter, jobId);
+            }
+        }
+    }
+
+    private void finish(SseEmitter emitter, String jobId) {
+        bulkJobStore.findStatus(jobId).ifPresent(status -> send(emitter, "completed", status));
+        emitter.complete();
+    }
+
+    private void send(SseEmitter emitter, String eventName, Object data) {
+        try {
+            synchronized (emitter) {
+                emitter.send(SseEmitter.event().name(eventName).data(data));
+            }
+        } catch (IOException | IllegalStateException e) {
+            // the client went away, it is removed by the emitter callbacks
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.nonstop.twilio.service;
+
+import java.util.List;
+import java.util.Optional;
+
+import com.nonstop.twilio.dto.BulkJobStatus;
+import com.nonstop.twilio.dto.MessageResponse;
+
+// storage for async bulk jobs, the in-memory store is used unless another bean is provided
+public interface BulkJobStore {
+    BulkJobStatus create(String jobId, int totalMessages);
+    void recordResult(String jobId, int index, MessageResponse response);
+    void markCompleted(String jobId);
+    Optional<BulkJobStatus> findStatus(String jobId);
+    List<MessageResponse> findResults(String jobId, int offset, int limit);
+}
@@ -0,0 +1,184 @@
+package com.nonstop.twilio.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.FailureType;
+import com.nonstop.twilio.enums.MessageChannel;
+
+// runs bulk sends concurrently on virtual threads, bounded per channel, keeping results in input order.
+// the bound keeps a large job from queueing all of its sends on the rate limiter at once. it covers rate
+// limiter waits and retry backoff too, the PriorityScheduler permit for the provider call is taken per attempt
+@Component
+public class BulkMessageDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkMessageDispatcher.class);
+
+    @Value("${messaging.bulk.max-concurrency-per-channel:50}")
+    private int maxConcurrencyPerChannel;
+
+    @Value("${messaging.bulk.timeout-ms:120000}")
+    private long defaultTimeoutMs;
+
+    private final Map<MessageChannel, Semaphore> channelPermits = new EnumMap<>(MessageChannel.class);
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        for (MessageChannel channel : MessageChannel.values()) {
+            channelPermits.put(channel, new Semaphore(maxConcurrencyPerChannel, true));
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public Duration getDefaultTimeout() {
+        return Duration.ofMillis(defaultTimeoutMs);
+    }
+
+    // bulk sends waiting for a free slot on the channel
+    public int getQueuedCount(MessageChannel channel) {
+        return channelPermits.get(channel).getQueueLength();
+    }
+    
+    // groups hold indexes into requests, each group is sent as one unit of work and takes one slot.
+    // waits until all are done or the deadline passes
+    public List<MessageResponse> dispatchGroups(List<MessageRequest> requests, List<int[]> groups,
+            Function<List<MessageRequest>, List<MessageResponse>> sender, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+
+        // plain futures (rather than CompletableFuture) so cancelling interrupts sends still waiting for a permit
+        List<List<MessageRequest>> groupRequests = new ArrayList<>(groups.size());
+        List<Future<List<MessageResponse>>> futures = new ArrayList<>(groups.size());
+        for (int[] group : groups) {
+            List<MessageRequest> selected = select(requests, group);
+            groupRequests.add(selected);
+            futures.add(executor.submit(() -> sendWithPermit(selected, sender)));
+        }
+
+        MessageResponse[] responses = new MessageResponse[requests.size()];
+        for (int i = 0; i < groups.size(); i++) {
+            int[] group = groups.get(i);
+            List<MessageResponse> groupResponses = awaitResponses(futures.get(i), groupRequests.get(i), deadline);
+            for (int j = 0; j < group.length; j++) {
+                responses[group[j]] = groupResponses.get(j);
+            }
+        }
+        return Arrays.asList(responses);
+    }
+
+    // sends every group in the background and reports each result (with its index) as soon as it is done
+    public CompletableFuture<Void> dispatchGroupsAsync(List<MessageRequest> requests, List<int[]> groups,
+            Function<List<MessageRequest>, List<MessageResponse>> sender, BiConsumer<Integer, MessageResponse> onResult) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+        for (int i = 0; i < groups.size(); i++) {
+            int[] group = groups.get(i);
+            List<MessageRequest> groupRequests = select(requests, group);
+            futures[i] = CompletableFuture.supplyAsync(() -> sendWithPermit(groupRequests, sender), executor)
+                    .exceptionally(e -> failed(groupRequests, "Failed to send message: " + e.getMessage(), FailureType.PERMANENT))
+                    .thenAccept(responses -> {
+                        for (int j = 0; j < group.length; j++) {
+                            onResult.accept(group[j], responses.get(j));
+                        }
+                    });
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    private List<MessageResponse> sendWithPermit(List<MessageRequest> requests,
+            Function<List<MessageRequest>, List<MessageResponse>> sender) {
+        MessageChannel channel = requests.get(0).getChannel();
+        Semaphore permits = channel != null ? channelPermits.get(channel) : null;
+        if (permits == null) {
+            return sender.apply(requests);
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(requests, "Bulk send cancelled before dispatch", FailureType.CANCELLED);
+        }
+
+        try {
+            return sender.apply(requests);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private List<MessageResponse> awaitResponses(Future<List<MessageResponse>> future, List<MessageRequest> requests,
+            long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            logger.warn("Bulk send deadline exceeded for {} {} message(s) to {}",
+                    requests.size(), requests.get(0).getChannel(), requests.get(0).getRecipient());
+            return failed(requests, "Bulk send deadline exceeded", FailureType.TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return failed(requests, "Bulk send interrupted", FailureType.CANCELLED);
+        } catch (ExecutionException e) {
+            logger.error("Bulk send failed for {} message to {}",
+                    requests.get(0).getChannel(), requests.get(0).getRecipient(), e.getCause());
+            return failed(requests, "Failed to send message: " + e.getCause().getMessage(), FailureType.PERMANENT);
+        }
+    }
+
+    private static List<MessageRequest> select(List<MessageRequest> requests, int[] group) {
+        if (group.length == 1) {
+            return List.of(requests.get(group[0]));
+        }
+        List<MessageRequest> selected = new ArrayList<>(group.length);
+        for (int index : group) {
+            selected.add(requests.get(index));
+        }
+        return selected;
+    }
+
+    private List<MessageResponse> failed(List<MessageRequest> requests, String message, FailureType failureType) {
+        List<MessageResponse> responses = new ArrayList<>(requests.size());
+        for (MessageRequest request : requests) {
+            responses.add(new MessageResponse(
+                    false,
+                    message,
+                    null,
+                    request.getChannel(),
+                    request.getRecipient(),
+                    failureType
+            ));
+        }
+        return responses;
+    }
+}
@@ -0,0 +1,108 @@
+package com.nonstop.twilio.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.FailureType;
+import com.nonstop.twilio.enums.MessagePriority;
+
+import reactor.core.publisher.Mono;
+
+// newline-delimited bulk sends: requests are read one at a time as they arrive and each result is written
+// back as soon as its send finishes, so memory use depends on the in-flight window and not the batch size.
+// when the window is full reading stops, which pushes back on the client through TCP flow control
+@Service
+public class BulkStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkStreamService.class);
+
+    @Value("${messaging.bulk.stream.max-in-flight:1000}")
+    private int maxInFlight;
+
+    @Autowired
+    private MessagingService messagingService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // one {"index":n,"response":{...}} line per request, in completion order. returns the number of requests read
+    public int stream(InputStream in, OutputStream out) throws IOException {
+        Semaphore window = new Semaphore(maxInFlight);
+        AtomicBoolean clientGone = new AtomicBoolean();
+        int index = 0;
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+                JsonParser parser = objectMapper.getFactory().createParser(in);
+                MappingIterator<MessageRequest> requests = objectMapper.readerFor(MessageRequest.class).readValues(parser)) {
+            generator.setRootValueSeparator(null);
+
+            try {
+                while (!clientGone.get() && requests.hasNextValue()) {
+                    MessageRequest request = requests.nextValue();
+                    window.acquire();
+
+                    int requestIndex = index++;
+                    if (request.getPriority() == null) {
+                        request.setPriority(MessagePriority.BULK);
+                    }
+                    // the send queues for its channel permit in the scheduler, no thread is held while it waits
+                    messagingService.sendMessageAsync(request)
+                            .onErrorResume(e -> Mono.just(failed(request, e)))
+                            .doFinally(signal -> window.release())
+                            .subscribe(response ->
+                                    write(generator, Map.of("index", requestIndex, "response", response), clientGone));
+                }
+            } catch (IOException | RuntimeException e) {
+                // malformed line: report it and stop reading, what was already accepted still completes
+                String reason = e instanceof JsonProcessingException jsonError ? jsonError.getOriginalMessage() : e.getMessage();
+                logger.warn("Stopped reading bulk stream at request {}: {}", index, reason);
+                write(generator, Map.of("index", index, "error", "Invalid request: " + reason), clientGone);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            window.acquireUninterruptibly(maxInFlight);
+        }
+
+        logger.info("Bulk stream finished after {} requests", index);
+        return index;
+    }
+
+    private static MessageResponse failed(MessageRequest request, Throwable e) {
+        return new MessageResponse(false, "Failed to send message: " + e.getMessage(), null,
+                request.getChannel(), request.getRecipient(), FailureType.PERMANENT);
+    }
+
+    private void write(JsonGenerator generator, Object line, AtomicBoolean clientGone) {
+        if (clientGone.get()) {
+            return;
+        }
+        try {
+            synchronized (generator) {
+                generator.writeObject(line);
+                generator.writeRaw('\n');
+                generator.flush();
+            }
+        } catch (IOException e) {
+            logger.warn("Bulk stream client went away: {}", e.getMessage());
+            clientGone.set(true);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.nonstop.twilio.service;
+
+// count-based circuit breaker: opens when the failure rate over the last window-size calls passes the
+// threshold, lets a few trial calls through after open-duration and closes again if they all succeed.
+// trials that never report back do not hold it half open forever, it opens again after another open-duration
+public class CircuitBreaker {
+    
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+    
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    
+    // outcomes of the last windowSize calls, true = failure
+    private final boolean[] window;
+    private int windowIndex;
+    private int recordedCalls;
+    private int failedCalls;
+    
+    private volatile State state = State.CLOSED;
+    private long openedAtNanos;
+    private long halfOpenedAtNanos;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+    
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, long openDurationMs, int halfOpenCalls) {
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDurationMs * 1_000_000L;
+        this.halfOpenCalls = halfOpenCalls;
+        this.window = new boolean[windowSize];
+    }
+    
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAtNanos < openDurationNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                halfOpenedAtNanos = System.nanoTime();
+                halfOpenPermits = halfOpenCalls;
+                halfOpenSuccesses = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (halfOpenPermits == 0) {
+                    if (System.nanoTime() - halfOpenedAtNanos >= openDurationNanos) {
+                        open();
+                    }
+                    return false;
+                }
+                halfOpenPermits--;
+            }
+            return true;
+        }
+    }
+    
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSuccesses >= halfOpenCalls) {
+                reset();
+            }
+            return;
+        }
+        record(false);
+    }
+    
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (recordedCalls >= minimumCalls && failedCalls * 100 >= failureRateThreshold * recordedCalls) {
+            open();
+        }
+    }
+    
+    // the call was not a verdict on the provider's health (e.g. bad recipient), give back a trial permit
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls) {
+            halfOpenPermits++;
+        }
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    private void record(boolean failure) {
+        if (recordedCalls == windowSize) {
+            if (window[windowIndex]) {
+                failedCalls--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            failedCalls++;
+        }
+        windowIndex = (windowIndex + 1) % windowSize;
+    }
+    
+    private void open() {
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+    }
+    
+    private void reset() {
+        state = State.CLOSED;
+        windowIndex = 0;
+        recordedCalls = 0;
+        failedCalls = 0;
+    }
+}
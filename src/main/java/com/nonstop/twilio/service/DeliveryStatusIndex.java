@@ -0,0 +1,196 @@
+package com.nonstop.twilio.service;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.dto.MessageDeliveryStatus;
+import com.nonstop.twilio.enums.DeliveryStatus;
+import com.nonstop.twilio.enums.MessageChannel;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// latest delivery status of recently sent messages, keyed by provider message id and by bulk job, so clients
+// can ask us instead of polling the provider. bounded by entry count, the oldest messages are dropped first,
+// and each entry keeps at most max-transitions status changes
+@Component
+public class DeliveryStatusIndex {
+
+    @Value("${messaging.delivery-status.max-entries:200000}")
+    private int maxEntries;
+
+    @Value("${messaging.delivery-status.max-transitions:8}")
+    private int maxTransitions;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Entry> byMessageId = new ConcurrentHashMap<>();
+    private final Map<String, Set<Entry>> byJob = new ConcurrentHashMap<>();
+
+    // insertion order for eviction
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedEntries = new AtomicInteger();
+
+    private final Counter[] updateCounters = new Counter[DeliveryStatus.values().length];
+
+    @PostConstruct
+    public void init() {
+        for (DeliveryStatus status : DeliveryStatus.values()) {
+            updateCounters[status.ordinal()] = meterRegistry.counter("messaging.delivery.status.updates",
+                    "status", status.name().toLowerCase());
+        }
+        Gauge.builder("messaging.delivery.status.entries", queuedEntries, AtomicInteger::get)
+                .description("Messages whose delivery status is being tracked")
+                .register(meterRegistry);
+    }
+
+    // called when the provider accepted a message
+    public void track(String messageId, MessageChannel channel, String recipient, DeliveryStatus status) {
+        update(messageId, channel, recipient, status, null);
+    }
+
+    // status callback from the provider, the message may not be known yet if the callback beat the send response
+    public void update(String messageId, MessageChannel channel, String recipient, DeliveryStatus status, String errorCode) {
+        if (messageId == null) {
+            return;
+        }
+
+        Entry entry = entryFor(messageId);
+        synchronized (entry) {
+            if (entry.channel == null) {
+                entry.channel = channel;
+            }
+            if (entry.recipient == null) {
+                entry.recipient = recipient;
+            }
+
+            Instant now = Instant.now();
+            if (entry.status == null || status.isAtLeast(entry.status)) {
+                entry.status = status;
+                entry.errorCode = errorCode;
+                entry.updatedAt = now;
+            }
+            if (entry.timeline.size() >= maxTransitions) {
+                entry.timeline.pollFirst();
+            }
+            entry.timeline.addLast(new MessageDeliveryStatus.Transition(status, now, errorCode));
+        }
+        updateCounters[status.ordinal()].increment();
+    }
+
+    public void assignJob(String messageId, String jobId) {
+        Entry entry = messageId != null ? byMessageId.get(messageId) : null;
+        if (entry == null || jobId == null) {
+            return;
+        }
+        // under the entry lock and only while it is still indexed, evict() drops it from byMessageId before
+        // taking the same lock, so an entry evicted in between is never left behind in byJob
+        synchronized (entry) {
+            if (byMessageId.get(messageId) != entry || jobId.equals(entry.jobId)) {
+                return;
+            }
+            if (entry.jobId != null) {
+                removeFromJob(entry.jobId, entry);
+            }
+            entry.jobId = jobId;
+            byJob.computeIfAbsent(jobId, id -> ConcurrentHashMap.newKeySet()).add(entry);
+        }
+    }
+
+    public Optional<MessageDeliveryStatus> find(String messageId) {
+        Entry entry = byMessageId.get(messageId);
+        return entry != null ? Optional.of(entry.snapshot()) : Optional.empty();
+    }
+
+    // statuses of the job's messages that are still in the index, in no particular order
+    public List<MessageDeliveryStatus> findByJob(String jobId) {
+        Set<Entry> entries = byJob.get(jobId);
+        if (entries == null) {
+            return List.of();
+        }
+        List<MessageDeliveryStatus> statuses = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            statuses.add(entry.snapshot());
+        }
+        return statuses;
+    }
+
+    private Entry entryFor(String messageId) {
+        Entry existing = byMessageId.get(messageId);
+        if (existing != null) {
+            return existing;
+        }
+
+        Entry created = new Entry(messageId);
+        existing = byMessageId.putIfAbsent(messageId, created);
+        if (existing != null) {
+            return existing;
+        }
+        queuedEntries.incrementAndGet();
+        insertionOrder.add(created);
+        evict();
+        return created;
+    }
+
+    private void evict() {
+        while (queuedEntries.get() > maxEntries) {
+            Entry oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            queuedEntries.decrementAndGet();
+            byMessageId.remove(oldest.messageId, oldest);
+
+            synchronized (oldest) {
+                if (oldest.jobId != null) {
+                    removeFromJob(oldest.jobId, oldest);
+                }
+            }
+        }
+    }
+
+    private void removeFromJob(String jobId, Entry entry) {
+        byJob.computeIfPresent(jobId, (id, entries) -> {
+            entries.remove(entry);
+            return entries.isEmpty() ? null : entries;
+        });
+    }
+
+    private static final class Entry {
+        private final String messageId;
+        private MessageChannel channel;
+        private String recipient;
+        private String jobId;
+        private DeliveryStatus status;
+        private String errorCode;
+        private Instant updatedAt;
+        private final Deque<MessageDeliveryStatus.Transition> timeline = new ArrayDeque<>(4);
+
+        Entry(String messageId) {
+            this.messageId = messageId;
+        }
+
+        synchronized MessageDeliveryStatus snapshot() {
+            return new MessageDeliveryStatus(messageId, channel, recipient, jobId, status, errorCode, updatedAt,
+                    List.copyOf(timeline));
+        }
+    }
+}
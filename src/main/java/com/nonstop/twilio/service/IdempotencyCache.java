@@ -0,0 +1,272 @@
+package com.nonstop.twilio.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.dto.MessageResponse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+// remembers the response for each idempotency key so a retried request gets the original result instead of
+// a second provider call. entries are evicted oldest first once they expire or the cache is over its entry
+// or byte budget. retryable failures are not remembered, the client is expected to try those again
+@Component
+public class IdempotencyCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyCache.class);
+
+    // rough per-entry cost of the map node, queue node, entry and future
+    private static final long ENTRY_OVERHEAD_BYTES = 200;
+
+    @Value("${messaging.idempotency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${messaging.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${messaging.idempotency.max-entries:100000}")
+    private int maxEntries;
+
+    @Value("${messaging.idempotency.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // insertion order for eviction, may still hold entries that were already dropped from the map
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedEntries = new AtomicInteger();
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    private long ttlNanos;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter expiredEvictions;
+    private Counter capacityEvictions;
+
+    @PostConstruct
+    public void init() {
+        ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+
+        hits = meterRegistry.counter("messaging.idempotency.lookups", "result", "hit");
+        misses = meterRegistry.counter("messaging.idempotency.lookups", "result", "miss");
+        expiredEvictions = meterRegistry.counter("messaging.idempotency.evictions", "cause", "expired");
+        capacityEvictions = meterRegistry.counter("messaging.idempotency.evictions", "cause", "capacity");
+        Gauge.builder("messaging.idempotency.entries", queuedEntries, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("messaging.idempotency.bytes", queuedBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public MessageResponse execute(String key, Supplier<MessageResponse> send) {
+        if (!enabled || key == null) {
+            return send.get();
+        }
+
+        Claim claim = claim(key);
+        if (!claim.isOwner()) {
+            try {
+                return claim.getResult().join();
+            } catch (CompletionException | CancellationException e) {
+                // the original attempt never produced a response, try again ourselves
+                return execute(key, send);
+            }
+        }
+
+        MessageResponse response;
+        try {
+            response = send.get();
+        } catch (RuntimeException e) {
+            abandon(claim, e);
+            throw e;
+        }
+        complete(claim, response);
+        return response;
+    }
+
+    public Mono<MessageResponse> executeAsync(String key, Supplier<Mono<MessageResponse>> send) {
+        if (!enabled || key == null) {
+            return send.get();
+        }
+
+        return Mono.defer(() -> {
+            Claim claim = claim(key);
+            if (!claim.isOwner()) {
+                // a cancelled duplicate must not cancel the original send
+                return Mono.fromFuture(claim.getResult(), true)
+                        .onErrorResume(e -> executeAsync(key, send));
+            }
+
+            return send.get()
+                    .doOnNext(response -> complete(claim, response))
+                    .doOnError(e -> abandon(claim, e))
+                    .doOnCancel(() -> abandon(claim, new CancellationException("Send cancelled")));
+        });
+    }
+
+    // either hands the key to the caller, who then has to complete or abandon the claim, or joins the original
+    public Claim claim(String key) {
+        if (!enabled || key == null) {
+            return new Claim(new Entry(key == null ? "" : key, System.nanoTime()), true);
+        }
+
+        Entry created = new Entry(key, System.nanoTime());
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, created);
+            if (existing == null) {
+                misses.increment();
+                track(created);
+                return new Claim(created, true);
+            }
+            if (isExpired(existing, System.nanoTime())) {
+                entries.remove(key, existing);
+                continue;
+            }
+            hits.increment();
+            logger.info("Duplicate request for idempotency key {}", key);
+            return new Claim(existing, false);
+        }
+    }
+
+    public void complete(Claim claim, MessageResponse response) {
+        Entry entry = claim.entry;
+        if (!claim.owner || entry.response.isDone()) {
+            return;
+        }
+
+        if (!response.success() && isRetryable(response)) {
+            entries.remove(entry.key, entry);
+        } else {
+            long size = estimateBytes(response);
+            long accounted = entry.bytes.get();
+            if (accounted >= 0 && entry.bytes.compareAndSet(accounted, accounted + size)) {
+                queuedBytes.addAndGet(size);
+            }
+        }
+        entry.response.complete(response);
+        evict();
+    }
+
+    // the owner failed without a response, waiting duplicates will retry
+    public void abandon(Claim claim, Throwable cause) {
+        Entry entry = claim.entry;
+        if (claim.owner && !entry.response.isDone()) {
+            entries.remove(entry.key, entry);
+            entry.response.completeExceptionally(cause);
+        }
+    }
+
+    private void track(Entry entry) {
+        // counted before it is queued, evict may take it off the queue straight away
+        queuedEntries.incrementAndGet();
+        queuedBytes.addAndGet(entry.bytes.get());
+        insertionOrder.add(entry);
+        evict();
+    }
+
+    private void evict() {
+        long now = System.nanoTime();
+        while (true) {
+            Entry oldest = insertionOrder.peek();
+            if (oldest == null) {
+                return;
+            }
+
+            boolean expired = isExpired(oldest, now);
+            boolean overCapacity = queuedEntries.get() > maxEntries || queuedBytes.get() > maxBytes;
+            if (!expired && !overCapacity) {
+                return;
+            }
+            if (!insertionOrder.remove(oldest)) {
+                // another thread evicted it first
+                continue;
+            }
+
+            queuedEntries.decrementAndGet();
+            long bytes = oldest.bytes.getAndSet(-1);
+            if (bytes > 0) {
+                queuedBytes.addAndGet(-bytes);
+            }
+            if (entries.remove(oldest.key, oldest)) {
+                (expired ? expiredEvictions : capacityEvictions).increment();
+            }
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return entry.response.isDone() && now - entry.createdAt > ttlNanos;
+    }
+
+    private static boolean isRetryable(MessageResponse response) {
+        if (response.failureType() == null) {
+            return false;
+        }
+        return switch (response.failureType()) {
+            case TRANSIENT, RATE_LIMITED, TIMEOUT, CIRCUIT_OPEN -> true;
+            default -> false;
+        };
+    }
+
+    private static long estimateBytes(MessageResponse response) {
+        return 2L * (length(response.message()) + length(response.messageId()) + length(response.recipient()));
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    public static final class Claim {
+        private final Entry entry;
+        private final boolean owner;
+
+        private Claim(Entry entry, boolean owner) {
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        public boolean isOwner() {
+            return owner;
+        }
+
+        public CompletableFuture<MessageResponse> getResult() {
+            return entry.response;
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final long createdAt;
+        private final CompletableFuture<MessageResponse> response = new CompletableFuture<>();
+        // -1 once the entry has left the eviction queue
+        private final AtomicLong bytes;
+
+        Entry(String key, long createdAt) {
+            this.key = key;
+            this.createdAt = createdAt;
+            this.bytes = new AtomicLong(ENTRY_OVERHEAD_BYTES + 2L * key.length());
+        }
+    }
+}
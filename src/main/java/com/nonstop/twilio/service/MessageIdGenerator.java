@@ -0,0 +1,72 @@
+package com.nonstop.twilio.service;
+
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// ids for messages the provider does not give an id for. 63 bits, snowflake layout:
+//   [41 bits millis since 2024-01-01][10 bits node][12 bits sequence]
+// printed as 16 hex digits, so ids sort by creation time as strings as well. the clock and sequence live in one
+// AtomicLong that only moves forward with a CAS, more than 4096 ids in a millisecond borrow from the next one
+// and a clock that steps back is ignored until it passes the last id again, so ids never repeat on one node.
+// ids are only unique across instances when each has its own messaging.ids.node. left unset it is 0, which is
+// fine for a single instance and logged at startup, since there is nothing to derive 10 unique bits from and
+// a random node would collide for one pair in 1024
+@Component
+public class MessageIdGenerator {
+
+    private static final long EPOCH_MILLIS = 1704067200000L;
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageIdGenerator.class);
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    // 0 to 1023, different for every instance that runs side by side. -1 = not set
+    @Value("${messaging.ids.node:-1}")
+    private int node;
+
+    // millis since the epoch << SEQUENCE_BITS | sequence, of the last id handed out
+    private final AtomicLong last = new AtomicLong();
+
+    private long nodeBits;
+
+    @PostConstruct
+    public void init() {
+        if (node == -1) {
+            logger.warn("messaging.ids.node is not set, using node 0. Give every instance that runs side by side "
+                    + "its own node, or their message ids can collide");
+            node = 0;
+        }
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalStateException("messaging.ids.node must be between 0 and " + MAX_NODE + ", was " + node);
+        }
+        nodeBits = (long) node << SEQUENCE_BITS;
+    }
+
+    public long nextId() {
+        while (true) {
+            long previous = last.get();
+            long next = Math.max((System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS, previous + 1);
+            if (last.compareAndSet(previous, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return millis << (NODE_BITS + SEQUENCE_BITS) | nodeBits | sequence;
+            }
+        }
+    }
+
+    // prefix followed by the id as 16 hex digits
+    public String nextId(String prefix) {
+        return prefix.concat(HEX.toHexDigits(nextId()));
+    }
+}
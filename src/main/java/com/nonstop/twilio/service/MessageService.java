@@ -1,10 +1,43 @@
 package com.nonstop.twilio.service;
 
+import java.util.List;
+
 import com.nonstop.twilio.dto.MessageRequest;
 import com.nonstop.twilio.dto.MessageResponse;
 import com.nonstop.twilio.enums.MessageChannel;
 
+import reactor.core.publisher.Mono;
+
 public interface MessageService {
     MessageResponse sendMessage(MessageRequest request);
     boolean supports(MessageChannel channel);
-}
\ No newline at end of file
+    
+    // non-blocking send, implementations that block should subscribe on the messaging offload scheduler
+    default Mono<MessageResponse> sendMessageAsync(MessageRequest request) {
+        return Mono.fromCallable(() -> sendMessage(request));
+    }
+    
+    // the sending number / account / page, rate limits are tracked per sender
+    default String getSenderId() {
+        return "default";
+    }
+    
+    // every sender the provider can send from, the first is getSenderId(). SenderRouter spreads sends over them
+    default List<String> getSenderIds() {
+        return List.of(getSenderId());
+    }
+    
+    // send from one of getSenderIds()
+    default MessageResponse sendMessage(MessageRequest request, String senderId) {
+        return sendMessage(request);
+    }
+    
+    default Mono<MessageResponse> sendMessageAsync(MessageRequest request, String senderId) {
+        return sendMessageAsync(request);
+    }
+    
+    // share of traffic when several providers support the same channel, 0 means it must be the only provider
+    default int getWeight() {
+        return 0;
+    }
+}
@@ -0,0 +1,127 @@
+package com.nonstop.twilio.service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.enums.MessageChannel;
+
+// channel -> provider routing table, built once at startup so lookups are a single array access
+@Component
+public class MessageServiceRegistry {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MessageServiceRegistry.class);
+    
+    @Autowired
+    private List<MessageService> messageServices;
+    
+    @Value("${messaging.routing.require-all-channels:false}")
+    private boolean requireAllChannels;
+    
+    private final Map<MessageChannel, Route> routes = new EnumMap<>(MessageChannel.class);
+    
+    private List<MessageChannel> supportedChannels = List.of();
+    
+    @PostConstruct
+    public void init() {
+        List<MessageChannel> channels = new ArrayList<>();
+        
+        for (MessageChannel channel : MessageChannel.values()) {
+            List<MessageService> providers = messageServices.stream()
+                    .filter(service -> service.supports(channel))
+                    .collect(Collectors.toList());
+            
+            if (providers.isEmpty()) {
+                if (requireAllChannels) {
+                    throw new IllegalStateException("No message service found for channel " + channel);
+                }
+                logger.warn("No message service found for channel {}", channel);
+                continue;
+            }
+            
+            routes.put(channel, Route.of(channel, providers));
+            channels.add(channel);
+            logger.info("Routing {} to {}", channel, describe(providers));
+        }
+        
+        supportedChannels = List.copyOf(channels);
+    }
+    
+    // returns the provider for the channel or null when nothing supports it
+    public MessageService getService(MessageChannel channel) {
+        Route route = channel != null ? routes.get(channel) : null;
+        return route != null ? route.select() : null;
+    }
+    
+    // all providers registered for the channel
+    public List<MessageService> getServices(MessageChannel channel) {
+        Route route = channel != null ? routes.get(channel) : null;
+        return route != null ? List.of(route.providers) : List.of();
+    }
+    
+    public List<MessageChannel> getSupportedChannels() {
+        return supportedChannels;
+    }
+    
+    private static String describe(List<MessageService> providers) {
+        return providers.stream()
+                .map(service -> service.getClass().getSimpleName()
+                        + (service.getWeight() > 0 ? "(weight " + service.getWeight() + ")" : ""))
+                .collect(Collectors.joining(", "));
+    }
+    
+    // the providers of one channel, picked at random by weight when there is more than one
+    private static final class Route {
+        private final MessageService[] providers;
+        private final int[] cumulativeWeights;
+        
+        private Route(MessageService[] providers, int[] cumulativeWeights) {
+            this.providers = providers;
+            this.cumulativeWeights = cumulativeWeights;
+        }
+        
+        static Route of(MessageChannel channel, List<MessageService> providers) {
+            MessageService[] array = providers.toArray(new MessageService[0]);
+            if (array.length == 1) {
+                return new Route(array, null);
+            }
+            
+            int[] cumulative = new int[array.length];
+            int total = 0;
+            for (int i = 0; i < array.length; i++) {
+                if (array[i].getWeight() <= 0) {
+                    throw new IllegalStateException("Duplicate message services for channel " + channel + ": "
+                            + describe(providers) + ". Give each provider a weight to share the channel.");
+                }
+                total += array[i].getWeight();
+                cumulative[i] = total;
+            }
+            return new Route(array, cumulative);
+        }
+        
+        MessageService select() {
+            if (cumulativeWeights == null) {
+                return providers[0];
+            }
+            
+            int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (pick < cumulativeWeights[i]) {
+                    return providers[i];
+                }
+            }
+            return providers[providers.length - 1];
+        }
+    }
+}
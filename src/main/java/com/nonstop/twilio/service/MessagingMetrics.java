@@ -0,0 +1,163 @@
+package com.nonstop.twilio.service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.FailureType;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.outbox.OutboxService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// provider call latency and outcomes per channel. every meter is registered up front so the hot path only
+// does array lookups, no tag building or registry lookups per message
+@Component
+public class MessagingMetrics {
+
+    private static final String SUCCESS = "success";
+    private static final String FAILURE = "failure";
+    private static final String NONE = "none";
+
+    // slot 0 is success, slot i + 1 is FailureType.values()[i]
+    private static final int OUTCOMES = FailureType.values().length + 1;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private BulkMessageDispatcher bulkMessageDispatcher;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    private final Map<MessageChannel, Timer[]> callTimers = new EnumMap<>(MessageChannel.class);
+    private final Map<MessageChannel, Counter[]> messageCounters = new EnumMap<>(MessageChannel.class);
+    private final Map<MessageChannel, AtomicInteger> inFlight = new EnumMap<>(MessageChannel.class);
+    private final Map<MessageChannel, DistributionSummary> batchSizes = new EnumMap<>(MessageChannel.class);
+
+    private DistributionSummary bulkSize;
+
+    @PostConstruct
+    public void init() {
+        for (MessageChannel channel : MessageChannel.values()) {
+            String channelTag = channel.name().toLowerCase();
+
+            Timer[] timers = new Timer[OUTCOMES];
+            Counter[] counters = new Counter[OUTCOMES];
+            for (int outcome = 0; outcome < OUTCOMES; outcome++) {
+                String result = outcome == 0 ? SUCCESS : FAILURE;
+                String failure = outcome == 0 ? NONE : FailureType.values()[outcome - 1].name().toLowerCase();
+
+                timers[outcome] = Timer.builder("messaging.provider.calls")
+                        .description("Time spent in one provider call")
+                        .tags("channel", channelTag, "outcome", result, "failure", failure)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(60))
+                        .register(meterRegistry);
+                counters[outcome] = Counter.builder("messaging.messages")
+                        .description("Messages handed to a provider, by result")
+                        .tags("channel", channelTag, "outcome", result, "failure", failure)
+                        .register(meterRegistry);
+            }
+            callTimers.put(channel, timers);
+            messageCounters.put(channel, counters);
+
+            AtomicInteger sending = new AtomicInteger();
+            inFlight.put(channel, sending);
+            Gauge.builder("messaging.provider.in-flight", sending, AtomicInteger::get)
+                    .description("Provider calls currently in progress")
+                    .tag("channel", channelTag)
+                    .register(meterRegistry);
+            Gauge.builder("messaging.bulk.queued", bulkMessageDispatcher, dispatcher -> dispatcher.getQueuedCount(channel))
+                    .description("Bulk sends waiting for a slot on the channel")
+                    .tag("channel", channelTag)
+                    .register(meterRegistry);
+
+            batchSizes.put(channel, DistributionSummary.builder("messaging.provider.batch.size")
+                    .description("Messages per provider batch call")
+                    .tag("channel", channelTag)
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(1000.0)
+                    .register(meterRegistry));
+        }
+
+        bulkSize = DistributionSummary.builder("messaging.bulk.size")
+                .description("Messages per bulk request")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(100_000.0)
+                .register(meterRegistry);
+        Gauge.builder("messaging.outbox.pending", outboxService, OutboxService::getPendingCount)
+                .description("Outbox messages not yet acknowledged")
+                .register(meterRegistry);
+    }
+
+    // call before the provider call, the returned value goes to record
+    public long start(MessageChannel channel) {
+        inFlight.get(channel).incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void record(MessageChannel channel, long startNanos, MessageResponse response) {
+        long elapsed = System.nanoTime() - startNanos;
+        inFlight.get(channel).decrementAndGet();
+
+        int outcome = outcome(response);
+        callTimers.get(channel)[outcome].record(elapsed, TimeUnit.NANOSECONDS);
+        messageCounters.get(channel)[outcome].increment();
+    }
+
+    // the provider call threw instead of returning a response
+    public void recordError(MessageChannel channel, long startNanos, Throwable error) {
+        long elapsed = System.nanoTime() - startNanos;
+        inFlight.get(channel).decrementAndGet();
+
+        int outcome = ProviderErrorClassifier.classify(error).ordinal() + 1;
+        callTimers.get(channel)[outcome].record(elapsed, TimeUnit.NANOSECONDS);
+        messageCounters.get(channel)[outcome].increment();
+    }
+
+    // the caller gave up on the call, it has no outcome to record
+    public void recordCancelled(MessageChannel channel) {
+        inFlight.get(channel).decrementAndGet();
+    }
+
+    // a batch is one provider call, every message in it is counted
+    public void recordBatch(MessageChannel channel, long startNanos, List<MessageResponse> responses) {
+        long elapsed = System.nanoTime() - startNanos;
+        inFlight.get(channel).decrementAndGet();
+
+        Counter[] counters = messageCounters.get(channel);
+        for (MessageResponse response : responses) {
+            counters[outcome(response)].increment();
+        }
+        callTimers.get(channel)[outcome(responses.get(0))].record(elapsed, TimeUnit.NANOSECONDS);
+        batchSizes.get(channel).record(responses.size());
+    }
+
+    public void recordBulk(int size) {
+        bulkSize.record(size);
+    }
+
+    private static int outcome(MessageResponse response) {
+        if (response.success()) {
+            return 0;
+        }
+        FailureType failureType = response.failureType() != null ? response.failureType() : FailureType.PERMANENT;
+        return failureType.ordinal() + 1;
+    }
+}
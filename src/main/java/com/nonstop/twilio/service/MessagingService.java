@@ -1,16 +1,40 @@
 package com.nonstop.twilio.service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import com.nonstop.twilio.dto.MessageRequest;
 import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.dto.SenderHealth;
+import com.nonstop.twilio.enums.FailureType;
 import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.enums.MessagePriority;
+import com.nonstop.twilio.service.coalesce.MessageCoalescer;
+import com.nonstop.twilio.service.outbox.OutboxService;
+import com.nonstop.twilio.service.schedule.ScheduledSendService;
+import com.nonstop.twilio.service.suppression.SuppressionService;
+import com.nonstop.twilio.service.template.TemplateService;
+
+import reactor.core.publisher.Mono;
 
 // coordinator service that routes message to appropriate channel-specific implementation
 @Service
@@ -18,53 +42,645 @@ public class MessagingService {
     
     private static final Logger logger = LoggerFactory.getLogger(MessagingService.class);
     
+    // rejections come in floods when a channel is overloaded, their text is built once per channel
+    private static final Map<MessageChannel, String> RATE_LIMITED_MESSAGES = new EnumMap<>(MessageChannel.class);
+    
+    static {
+        for (MessageChannel channel : MessageChannel.values()) {
+            RATE_LIMITED_MESSAGES.put(channel, "Rate limit exceeded for channel: " + channel);
+        }
+    }
+    
+    @Autowired
+    private MessageServiceRegistry messageServiceRegistry;
+    
+    @Autowired
+    private SenderRouter senderRouter;
+    
+    @Autowired
+    private BulkMessageDispatcher bulkMessageDispatcher;
+    
+    @Autowired
+    private RateLimiterRegistry rateLimiterRegistry;
+    
+    @Autowired
+    private ProviderResilience providerResilience;
+    
+    @Autowired
+    private OutboxService outboxService;
+    
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+    
+    @Autowired
+    private MessagingMetrics messagingMetrics;
+    
+    @Autowired
+    private TemplateService templateService;
+    
+    @Autowired
+    private PriorityScheduler priorityScheduler;
+    
     @Autowired
-    private List<MessageService> messageServices;
+    private ScheduledSendService scheduledSendService;
+    
+    @Autowired
+    private MessageCoalescer messageCoalescer;
+    
+    @Autowired
+    private SuppressionService suppressionService;
+    
+    // messages accepted before the last shutdown or crash that were never finished
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOutbox() {
+        outboxService.replay(this::sendReplayed);
+    }
+    
+    // messages with a sendAt are rendered and deduplicated when accepted and go straight to sending once due
+    @EventListener(ApplicationReadyEvent.class)
+    public void startScheduledSends() {
+        scheduledSendService.start(this::sendDurableAsync);
+    }
     
-    // send a message using the appropriate service
+    // send a message using the appropriate service, a repeated idempotency key gets the first response back
     public MessageResponse sendMessage(MessageRequest request) {
+        MessageRequest rendered;
+        try {
+            rendered = templateService.render(request);
+        } catch (IllegalArgumentException e) {
+            return invalidTemplate(request, e);
+        }
+        return idempotencyCache.execute(rendered.getIdempotencyKey(), () -> scheduledSendService.isScheduled(rendered)
+                ? scheduledSendService.schedule(rendered)
+                : sendDurable(rendered));
+    }
+    
+    // non-blocking variant of sendMessage, the caller's thread is released while the provider call is in flight
+    public Mono<MessageResponse> sendMessageAsync(MessageRequest request) {
+        MessageRequest rendered;
+        try {
+            rendered = templateService.render(request);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(invalidTemplate(request, e));
+        }
+        return idempotencyCache.executeAsync(rendered.getIdempotencyKey(), () -> scheduledSendService.isScheduled(rendered)
+                ? Mono.fromSupplier(() -> scheduledSendService.schedule(rendered))
+                : sendDurableAsync(rendered));
+    }
+    
+    // the recipient may have opted out or bounced since the message was accepted. replays are catch-up traffic,
+    // they wait in the bulk lane unless the request chose one, like released scheduled messages
+    private MessageResponse sendReplayed(MessageRequest request) {
+        if (suppressionService.isSuppressed(request.getChannel(), request.getRecipient())) {
+            return suppressed(request);
+        }
+        if (request.getPriority() == null) {
+            request.setPriority(MessagePriority.BULK);
+        }
+        return sendScheduled(request);
+    }
+    
+    // checked when the message is sent, a scheduled message is dropped if its recipient opted out in the meantime
+    private MessageResponse sendDurable(MessageRequest request) {
+        if (suppressionService.isSuppressed(request.getChannel(), request.getRecipient())) {
+            return suppressed(request);
+        }
+        if (!outboxService.isEnabled()) {
+            return sendCoalesced(request);
+        }
+        
+        long seq;
+        try {
+            seq = outboxService.append(List.of(request)).join()[0];
+        } catch (RuntimeException e) {
+            return outboxUnavailable(request, e);
+        }
+        
+        try {
+            return sendCoalesced(request);
+        } finally {
+            outboxService.ack(seq);
+        }
+    }
+    
+    private Mono<MessageResponse> sendDurableAsync(MessageRequest request) {
+        if (suppressionService.isSuppressed(request.getChannel(), request.getRecipient())) {
+            return Mono.just(suppressed(request));
+        }
+        if (!outboxService.isEnabled()) {
+            return sendCoalescedAsync(request);
+        }
+        
+        return Mono.fromFuture(() -> outboxService.append(List.of(request)))
+                .flatMap(seqs -> sendCoalescedAsync(request).doFinally(signal -> outboxService.ack(seqs[0])))
+                .onErrorResume(e -> Mono.just(outboxUnavailable(request, e)));
+    }
+    
+    // messages to the same recipient in quick succession may share one provider call, each is in the outbox
+    // on its own until that call is done
+    private MessageResponse sendCoalesced(MessageRequest request) {
+        if (!messageCoalescer.accepts(request)) {
+            return sendScheduled(request);
+        }
+        try {
+            return messageCoalescer.submit(request, this::sendScheduledAsync).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+    
+    private Mono<MessageResponse> sendCoalescedAsync(MessageRequest request) {
+        if (!messageCoalescer.accepts(request)) {
+            return sendScheduledAsync(request);
+        }
+        return Mono.fromFuture(() -> messageCoalescer.submit(request, this::sendScheduledAsync));
+    }
+    
+    // single sends go in the NORMAL lane unless the request says otherwise
+    private MessageResponse sendScheduled(MessageRequest request) {
+        return sendDirect(request, priorityOf(request, MessagePriority.NORMAL));
+    }
+    
+    private Mono<MessageResponse> sendScheduledAsync(MessageRequest request) {
+        return sendDirectAsync(request, priorityOf(request, MessagePriority.NORMAL));
+    }
+    
+    private static MessagePriority priorityOf(MessageRequest request, MessagePriority fallback) {
+        return request.getPriority() != null ? request.getPriority() : fallback;
+    }
+    
+    // every attempt asks the router for a sender, so a retry goes to another one when the channel has several.
+    // each attempt waits for a channel permit in lane, a send that is throttled or backing off holds none
+    private MessageResponse sendDirect(MessageRequest request, MessagePriority lane) {
         logger.info("Sending {} message to {}", request.getChannel(), request.getRecipient());
         
-        MessageService service = getServiceForChannel(request.getChannel());
-        if (service == null) {
-            logger.error("No service found for channel: {}", request.getChannel());
-            return new MessageResponse(
-                false, 
-                "Unsupported channel: " + request.getChannel(), 
-                null, 
-                request.getChannel(), 
-                request.getRecipient()
-            );
+        if (!senderRouter.supports(request.getChannel())) {
+            return unsupportedChannel(request);
+        }
+        
+        SenderRouter.Attempts attempts = senderRouter.attempts(request.getChannel());
+        return providerResilience.execute(request, () -> dispatch(attempts.next(), request, lane));
+    }
+    
+    private Mono<MessageResponse> sendDirectAsync(MessageRequest request, MessagePriority lane) {
+        logger.info("Sending {} message to {} (async)", request.getChannel(), request.getRecipient());
+        
+        if (!senderRouter.supports(request.getChannel())) {
+            return Mono.just(unsupportedChannel(request));
+        }
+        
+        SenderRouter.Attempts attempts = senderRouter.attempts(request.getChannel());
+        return providerResilience.executeAsync(request, () -> {
+            SenderRouter.Sender sender = attempts.next();
+            
+            // wait for the rate limiter slot on a timer instead of parking a thread
+            Duration wait = rateLimiterRegistry.reserve(request.getChannel(), sender.getSenderId());
+            if (wait == null) {
+                sender.rejected();
+                return Mono.just(rateLimited(request));
+            }
+            
+            Mono<MessageResponse> send = priorityScheduler.withPermit(request.getChannel(), lane, timed(request.getChannel(),
+                    sender, () -> sender.getService().sendMessageAsync(request, sender.getSenderId())));
+            return (wait.isZero() ? send : Mono.delay(wait).then(send))
+                    .doOnNext(response -> recordOutcome(sender, request, response));
+        });
+    }
+    
+    // one attempt: rate limit, then a channel permit for the provider call only
+    private MessageResponse dispatch(SenderRouter.Sender sender, MessageRequest request, MessagePriority lane) {
+        if (!rateLimiterRegistry.acquire(request.getChannel(), sender.getSenderId())) {
+            sender.rejected();
+            return rateLimited(request);
+        }
+        
+        PriorityScheduler.Permit permit;
+        try {
+            permit = priorityScheduler.acquireBlocking(request.getChannel(), lane);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return interrupted(request);
+        }
+        
+        long start = messagingMetrics.start(request.getChannel());
+        long routed = sender.begin();
+        MessageResponse response;
+        try (permit) {
+            response = sender.getService().sendMessage(request, sender.getSenderId());
+        } catch (RuntimeException e) {
+            sender.endWithError(routed);
+            messagingMetrics.recordError(request.getChannel(), start, e);
+            throw e;
         }
+        sender.end(routed, response);
+        messagingMetrics.record(request.getChannel(), start, response);
         
-        return service.sendMessage(request);
+        recordOutcome(sender, request, response);
+        return response;
+    }
+    
+    // the clock starts on subscription, after any rate limiter delay
+    private Mono<MessageResponse> timed(MessageChannel channel, SenderRouter.Sender sender,
+            Supplier<Mono<MessageResponse>> send) {
+        return Mono.defer(() -> {
+            long start = messagingMetrics.start(channel);
+            long routed = sender.begin();
+            return send.get()
+                    .doOnNext(response -> {
+                        sender.end(routed, response);
+                        messagingMetrics.record(channel, start, response);
+                    })
+                    .doOnError(e -> {
+                        sender.endWithError(routed);
+                        messagingMetrics.recordError(channel, start, e);
+                    })
+                    .doOnCancel(() -> {
+                        sender.cancelled();
+                        messagingMetrics.recordCancelled(channel);
+                    });
+        });
+    }
+    
+    private void recordOutcome(SenderRouter.Sender sender, MessageRequest request, MessageResponse response) {
+        if (response.success()) {
+            rateLimiterRegistry.onSuccess(request.getChannel(), sender.getSenderId());
+        }
+    }
+    
+    private MessageResponse rateLimited(MessageRequest request) {
+        logger.warn("Rate limit queue for {} is full, rejecting message to {}", request.getChannel(), request.getRecipient());
+        return new MessageResponse(
+            false, 
+            RATE_LIMITED_MESSAGES.get(request.getChannel()), 
+            null, 
+            request.getChannel(), 
+            request.getRecipient(),
+            FailureType.RATE_LIMITED
+        );
+    }
+    
+    private MessageResponse interrupted(MessageRequest request) {
+        logger.warn("Interrupted while waiting to send {} message to {}", request.getChannel(), request.getRecipient());
+        return new MessageResponse(
+            false, 
+            "Send interrupted before dispatch", 
+            null, 
+            request.getChannel(), 
+            request.getRecipient(),
+            FailureType.CANCELLED
+        );
+    }
+    
+    private MessageResponse outboxUnavailable(MessageRequest request, Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        logger.error("Failed to write {} message to {} to the outbox", request.getChannel(), request.getRecipient(), e);
+        return new MessageResponse(
+            false, 
+            "Message could not be stored for delivery: " + e.getMessage(), 
+            null, 
+            request.getChannel(), 
+            request.getRecipient(),
+            FailureType.TRANSIENT
+        );
+    }
+    
+    private MessageResponse invalidTemplate(MessageRequest request, IllegalArgumentException e) {
+        logger.error("Failed to render template {} for {}: {}", request.getTemplateId(), request.getRecipient(), e.getMessage());
+        return new MessageResponse(
+            false, 
+            "Failed to render template: " + e.getMessage(), 
+            null, 
+            request.getChannel(), 
+            request.getRecipient(),
+            FailureType.INVALID_REQUEST
+        );
+    }
+    
+    private MessageResponse suppressed(MessageRequest request) {
+        logger.debug("Not sending {} message to suppressed recipient {}", request.getChannel(), request.getRecipient());
+        return new MessageResponse(
+            false, 
+            "Recipient is on the suppression list", 
+            null, 
+            request.getChannel(), 
+            request.getRecipient(),
+            FailureType.SUPPRESSED
+        );
+    }
+    
+    private MessageResponse unsupportedChannel(MessageRequest request) {
+        logger.error("No service found for channel: {}", request.getChannel());
+        return new MessageResponse(
+            false, 
+            "Unsupported channel: " + request.getChannel(), 
+            null, 
+            request.getChannel(), 
+            request.getRecipient(),
+            FailureType.INVALID_REQUEST
+        );
     }
     
-    // send bulk messages using appropriate services based on each request's channel
+    // send bulk messages concurrently, responses are returned in the same order as the requests
     public List<MessageResponse> sendBulkMessage(List<MessageRequest> requests) {
-        logger.info("Sending bulk messages: {} requests", requests.size());
+        return sendBulkMessage(requests, bulkMessageDispatcher.getDefaultTimeout());
+    }
+    
+    // same as above but gives up on messages that are not done once the timeout passes
+    public List<MessageResponse> sendBulkMessage(List<MessageRequest> requests, Duration timeout) {
+        messagingMetrics.recordBulk(requests.size());
+        
+        MessageResponse[] answered = new MessageResponse[requests.size()];
+        List<MessageRequest> rendered = prepareAll(requests, answered);
+        if (rendered.size() == requests.size()) {
+            return dispatchBulk(rendered, timeout);
+        }
+        
+        List<MessageResponse> sent = rendered.isEmpty() ? List.of() : dispatchBulk(rendered, timeout);
+        List<MessageResponse> responses = new ArrayList<>(requests.size());
+        for (int i = 0, next = 0; i < requests.size(); i++) {
+            responses.add(answered[i] != null ? answered[i] : sent.get(next++));
+        }
+        return responses;
+    }
+    
+    private List<MessageResponse> dispatchBulk(List<MessageRequest> requests, Duration timeout) {
+        List<int[]> groups = groupForDispatch(requests);
+        logger.info("Sending bulk messages: {} requests in {} sends, timeout {}", requests.size(), groups.size(), timeout);
+        
+        if (!outboxService.isEnabled()) {
+            return bulkMessageDispatcher.dispatchGroups(requests, groups, this::sendGroup, timeout);
+        }
+        
+        // the whole batch goes into a single group commit
+        long[] seqs;
+        try {
+            seqs = outboxService.append(requests).join();
+        } catch (RuntimeException e) {
+            return requests.stream().map(request -> outboxUnavailable(request, e)).toList();
+        }
+        
+        Map<MessageRequest, Long> seqByRequest = new IdentityHashMap<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            seqByRequest.put(requests.get(i), seqs[i]);
+        }
+        
+        Function<List<MessageRequest>, List<MessageResponse>> sender = group -> {
+            try {
+                return sendGroup(group);
+            } finally {
+                group.forEach(request -> outboxService.ack(seqByRequest.get(request)));
+            }
+        };
+        
+        try {
+            return bulkMessageDispatcher.dispatchGroups(requests, groups, sender, timeout);
+        } finally {
+            // sends that missed the deadline were already reported as failed, don't replay them later
+            for (long seq : seqs) {
+                outboxService.ack(seq);
+            }
+        }
+    }
+    
+    // send bulk messages in the background, each result is reported with its index as soon as it is done
+    public CompletableFuture<Void> sendBulkMessageAsync(List<MessageRequest> requests,
+            BiConsumer<Integer, MessageResponse> onResult) {
+        messagingMetrics.recordBulk(requests.size());
         
-        return requests.stream()
-                .map(this::sendMessage)
-                .collect(Collectors.toList());
+        MessageResponse[] answered = new MessageResponse[requests.size()];
+        List<MessageRequest> rendered = prepareAll(requests, answered);
+        if (rendered.size() == requests.size()) {
+            return dispatchBulkAsync(rendered, onResult);
+        }
+        
+        // rendered.get(i) came from requests.get(originalIndex[i])
+        int[] originalIndex = new int[rendered.size()];
+        for (int i = 0, next = 0; i < requests.size(); i++) {
+            if (answered[i] != null) {
+                onResult.accept(i, answered[i]);
+            } else {
+                originalIndex[next++] = i;
+            }
+        }
+        return rendered.isEmpty()
+                ? CompletableFuture.completedFuture(null)
+                : dispatchBulkAsync(rendered, (index, response) -> onResult.accept(originalIndex[index], response));
+    }
+    
+    // templated requests are rendered up front. the ones that cannot be rendered, the ones with a sendAt and the
+    // ones to suppressed recipients are answered right away, their response goes in answered and they are left
+    // out of the returned list
+    private List<MessageRequest> prepareAll(List<MessageRequest> requests, MessageResponse[] answered) {
+        List<MessageRequest> rendered = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            MessageRequest request = requests.get(i);
+            MessageRequest prepared;
+            try {
+                prepared = templateService.render(request);
+            } catch (IllegalArgumentException e) {
+                answered[i] = invalidTemplate(request, e);
+                continue;
+            }
+            if (scheduledSendService.isScheduled(prepared)) {
+                answered[i] = idempotencyCache.execute(prepared.getIdempotencyKey(),
+                        () -> scheduledSendService.schedule(prepared));
+            } else if (suppressionService.isSuppressed(prepared.getChannel(), prepared.getRecipient())) {
+                answered[i] = suppressed(prepared);
+            } else {
+                rendered.add(prepared);
+            }
+        }
+        return rendered;
+    }
+    
+    private CompletableFuture<Void> dispatchBulkAsync(List<MessageRequest> requests,
+            BiConsumer<Integer, MessageResponse> onResult) {
+        List<int[]> groups = groupForDispatch(requests);
+        logger.info("Sending bulk messages in background: {} requests in {} sends", requests.size(), groups.size());
+        
+        if (!outboxService.isEnabled()) {
+            return bulkMessageDispatcher.dispatchGroupsAsync(requests, groups, this::sendGroup, onResult);
+        }
+        
+        return outboxService.append(requests)
+                .thenCompose(seqs -> bulkMessageDispatcher.dispatchGroupsAsync(requests, groups, this::sendGroup,
+                        (index, response) -> {
+                            outboxService.ack(seqs[index]);
+                            onResult.accept(index, response);
+                        }))
+                .exceptionally(e -> {
+                    for (int i = 0; i < requests.size(); i++) {
+                        onResult.accept(i, outboxUnavailable(requests.get(i), e));
+                    }
+                    return null;
+                });
+    }
+    
+    // requests that a batch-capable provider can send together are grouped, everything else goes out on its own.
+    // a batch is sent in one priority lane, so only requests of the same priority share one
+    private List<int[]> groupForDispatch(List<MessageRequest> requests) {
+        List<int[]> groups = new ArrayList<>(requests.size());
+        Map<List<Object>, List<Integer>> batches = new LinkedHashMap<>();
+        Map<List<Object>, Integer> batchLimits = new LinkedHashMap<>();
+        
+        for (int i = 0; i < requests.size(); i++) {
+            MessageRequest request = requests.get(i);
+            MessageService service = messageServiceRegistry.getService(request.getChannel());
+            
+            if (service instanceof BatchMessageService batchService) {
+                Object batchKey = batchService.getBatchKey(request);
+                if (batchKey != null) {
+                    List<Object> key = List.of(request.getChannel(), priorityOf(request, MessagePriority.BULK), batchKey);
+                    batches.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+                    batchLimits.putIfAbsent(key, batchService.getMaxBatchSize());
+                    continue;
+                }
+            }
+            groups.add(new int[] { i });
+        }
+        
+        for (Map.Entry<List<Object>, List<Integer>> batch : batches.entrySet()) {
+            List<Integer> indexes = batch.getValue();
+            int maxBatchSize = Math.max(1, batchLimits.get(batch.getKey()));
+            for (int from = 0; from < indexes.size(); from += maxBatchSize) {
+                List<Integer> chunk = indexes.subList(from, Math.min(indexes.size(), from + maxBatchSize));
+                groups.add(chunk.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        return groups;
+    }
+    
+    private List<MessageResponse> sendGroup(List<MessageRequest> group) {
+        if (group.size() == 1) {
+            return List.of(sendOnce(group.get(0)));
+        }
+        
+        MessageRequest first = group.get(0);
+        SenderRouter.Sender sender = senderRouter.choose(first.getChannel());
+        if (sender == null || !(sender.getService() instanceof BatchMessageService)) {
+            // provider changed since grouping (weighted routing), fall back to one send per request
+            List<MessageResponse> responses = new ArrayList<>(group.size());
+            for (MessageRequest request : group) {
+                responses.add(sendOnce(request));
+            }
+            return responses;
+        }
+        
+        // requests whose idempotency key is already known wait for the original instead of joining the batch
+        List<IdempotencyCache.Claim> claims = new ArrayList<>(group.size());
+        List<MessageRequest> toSend = new ArrayList<>(group.size());
+        for (MessageRequest request : group) {
+            IdempotencyCache.Claim claim = idempotencyCache.claim(request.getIdempotencyKey());
+            claims.add(claim);
+            if (claim.isOwner()) {
+                toSend.add(request);
+            }
+        }
+        
+        List<MessageResponse> sent;
+        try {
+            sent = toSend.isEmpty() ? List.of() : sendBatch(sender, toSend, priorityOf(first, MessagePriority.BULK));
+        } catch (RuntimeException e) {
+            claims.forEach(claim -> idempotencyCache.abandon(claim, e));
+            throw e;
+        }
+        
+        MessageResponse[] responses = new MessageResponse[group.size()];
+        for (int i = 0, next = 0; i < group.size(); i++) {
+            if (claims.get(i).isOwner()) {
+                responses[i] = sent.get(next++);
+                idempotencyCache.complete(claims.get(i), responses[i]);
+            }
+        }
+        for (int i = 0; i < group.size(); i++) {
+            if (responses[i] == null) {
+                responses[i] = joinOriginal(claims.get(i), group.get(i));
+            }
+        }
+        return Arrays.asList(responses);
+    }
+    
+    // retries stay with the provider that can batch, on another of its senders when it has several.
+    // the batch shares one priority, it is part of the batch key
+    private List<MessageResponse> sendBatch(SenderRouter.Sender first, List<MessageRequest> batch, MessagePriority lane) {
+        MessageChannel channel = batch.get(0).getChannel();
+        logger.info("Sending batch of {} {} messages", batch.size(), channel);
+        
+        SenderRouter.Attempts attempts = senderRouter.attempts(first);
+        return providerResilience.executeBatch(batch, () -> {
+            SenderRouter.Sender sender = attempts.next();
+            BatchMessageService service = (BatchMessageService) sender.getService();
+            
+            // one provider call, so one rate limiter slot
+            if (!rateLimiterRegistry.acquire(channel, sender.getSenderId())) {
+                sender.rejected();
+                List<MessageResponse> rejected = new ArrayList<>(batch.size());
+                for (MessageRequest request : batch) {
+                    rejected.add(rateLimited(request));
+                }
+                return rejected;
+            }
+            
+            PriorityScheduler.Permit permit;
+            try {
+                permit = priorityScheduler.acquireBlocking(channel, lane);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                List<MessageResponse> cancelled = new ArrayList<>(batch.size());
+                for (MessageRequest request : batch) {
+                    cancelled.add(interrupted(request));
+                }
+                return cancelled;
+            }
+            
+            long start = messagingMetrics.start(channel);
+            long routed = sender.begin();
+            List<MessageResponse> responses;
+            try (permit) {
+                responses = service.sendBatch(batch, sender.getSenderId());
+            } catch (RuntimeException e) {
+                sender.endWithError(routed);
+                messagingMetrics.recordError(channel, start, e);
+                throw e;
+            }
+            sender.end(routed, responses.get(0));
+            messagingMetrics.recordBatch(channel, start, responses);
+            
+            recordOutcome(sender, batch.get(0), responses.get(0));
+            return responses;
+        });
+    }
+    
+    // bulk sends go in the BULK lane unless the request says otherwise
+    private MessageResponse sendOnce(MessageRequest request) {
+        return idempotencyCache.execute(request.getIdempotencyKey(),
+                () -> sendDirect(request, priorityOf(request, MessagePriority.BULK)));
+    }
+    
+    private MessageResponse joinOriginal(IdempotencyCache.Claim claim, MessageRequest request) {
+        try {
+            return claim.getResult().join();
+        } catch (CompletionException | CancellationException e) {
+            // the original send died without a response
+            return sendOnce(request);
+        }
+    }
+    
+    public Map<MessageChannel, CircuitBreaker.State> getCircuitBreakerStates() {
+        return providerResilience.getBreakerStates();
     }
     
-    // find the appropriate service for the given channel
-    private MessageService getServiceForChannel(MessageChannel channel) {
-        return messageServices.stream()
-                .filter(service -> service.supports(channel))
-                .findFirst()
-                .orElse(null);
+    public Map<MessageChannel, List<SenderHealth>> getSenderHealth() {
+        return senderRouter.getHealth();
     }
     
     // get all supported channels
     public List<MessageChannel> getSupportedChannels() {
-        return messageServices.stream()
-                .flatMap(service -> 
-                    List.of(MessageChannel.values()).stream()
-                        .filter(service::supports)
-                )
-                .distinct()
-                .collect(Collectors.toList());
+        return messageServiceRegistry.getSupportedChannels();
     }
 }
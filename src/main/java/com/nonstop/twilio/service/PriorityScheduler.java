@@ -0,0 +1,307 @@
+package com.nonstop.twilio.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.enums.MessagePriority;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+// hands out the per-channel send permits. waiting sends are queued per priority lane and a freed permit goes
+// to the lane chosen by weighted fair queuing (stride scheduling): with the default weights transactional gets
+// 16 permits for every 4 normal and 1 bulk while all three are busy, and a lane that is idle does not save up
+// credit for later. a send that has waited longer than max-wait is served first whatever its lane, so bulk
+// work keeps moving under a steady stream of higher priority traffic
+@Component
+public class PriorityScheduler {
+
+    private static final MessagePriority[] LANES = MessagePriority.values();
+
+    @Value("${messaging.scheduling.max-concurrency-per-channel:${messaging.bulk.max-concurrency-per-channel:50}}")
+    private int maxConcurrencyPerChannel;
+
+    @Value("${messaging.scheduling.weights.transactional:16}")
+    private int transactionalWeight;
+
+    @Value("${messaging.scheduling.weights.normal:4}")
+    private int normalWeight;
+
+    @Value("${messaging.scheduling.weights.bulk:1}")
+    private int bulkWeight;
+
+    @Value("${messaging.scheduling.max-wait-ms:5000}")
+    private long maxWaitMs;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<MessageChannel, ChannelLanes> channels = new EnumMap<>(MessageChannel.class);
+
+    @PostConstruct
+    public void init() {
+        double[] strides = new double[LANES.length];
+        strides[MessagePriority.TRANSACTIONAL.ordinal()] = 1.0 / Math.max(1, transactionalWeight);
+        strides[MessagePriority.NORMAL.ordinal()] = 1.0 / Math.max(1, normalWeight);
+        strides[MessagePriority.BULK.ordinal()] = 1.0 / Math.max(1, bulkWeight);
+        long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+
+        for (MessageChannel channel : MessageChannel.values()) {
+            String channelTag = channel.name().toLowerCase();
+            Timer[] waitTimers = new Timer[LANES.length];
+            for (MessagePriority lane : LANES) {
+                waitTimers[lane.ordinal()] = Timer.builder("messaging.scheduler.wait")
+                        .description("Time a send waited for a channel permit")
+                        .tags("channel", channelTag, "priority", lane.name().toLowerCase())
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(60))
+                        .register(meterRegistry);
+            }
+
+            ChannelLanes lanes = new ChannelLanes(maxConcurrencyPerChannel, strides, maxWaitNanos, waitTimers);
+            channels.put(channel, lanes);
+            for (MessagePriority lane : LANES) {
+                Gauge.builder("messaging.scheduler.queued", lanes, l -> l.queued(lane))
+                        .description("Sends waiting for a channel permit")
+                        .tags("channel", channelTag, "priority", lane.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    // completes once a permit is free, cancelling the future gives up the place in the queue
+    public CompletableFuture<Permit> acquire(MessageChannel channel, MessagePriority priority) {
+        return channels.get(channel).enqueue(priority);
+    }
+
+    // blocks until a permit is free
+    public Permit acquireBlocking(MessageChannel channel, MessagePriority priority) throws InterruptedException {
+        ChannelLanes lanes = channels.get(channel);
+        Permit immediate = lanes.tryAcquire(priority);
+        if (immediate != null) {
+            return immediate;
+        }
+        CompletableFuture<Permit> pending = lanes.enqueue(priority);
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            giveUp(pending);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Permit request failed", e.getCause());
+        }
+    }
+
+    // runs send while holding a permit, cancelling the subscription gives up the place in the queue
+    public <T> Mono<T> withPermit(MessageChannel channel, MessagePriority priority, Mono<T> send) {
+        return Mono.defer(() -> {
+            CompletableFuture<Permit> pending = acquire(channel, priority);
+            return Mono.usingWhen(
+                    Mono.fromFuture(pending, true).doOnCancel(() -> giveUp(pending)),
+                    permit -> send,
+                    permit -> Mono.fromRunnable(permit::close));
+        });
+    }
+
+    // sends waiting on the channel, all lanes together
+    public int getQueuedCount(MessageChannel channel) {
+        ChannelLanes lanes = channels.get(channel);
+        int queued = 0;
+        for (MessagePriority lane : LANES) {
+            queued += lanes.queued(lane);
+        }
+        return queued;
+    }
+
+    private static void giveUp(CompletableFuture<Permit> pending) {
+        // too late when it was granted in the meantime, hand the permit straight back
+        if (!pending.cancel(false)) {
+            pending.thenAccept(Permit::close);
+        }
+    }
+
+    // released by close(), more than once is fine
+    public static final class Permit implements AutoCloseable {
+        // a flag in the permit itself rather than an AtomicBoolean next to it, one object less per send
+        private static final VarHandle RELEASED;
+
+        static {
+            try {
+                RELEASED = MethodHandles.lookup().findVarHandle(Permit.class, "released", boolean.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final ChannelLanes lanes;
+        private volatile boolean released;
+
+        private Permit(ChannelLanes lanes) {
+            this.lanes = lanes;
+        }
+
+        @Override
+        public void close() {
+            if (RELEASED.compareAndSet(this, false, true)) {
+                lanes.release();
+            }
+        }
+    }
+
+    private static final class Waiter {
+        private final CompletableFuture<Permit> granted = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+    }
+
+    private static final class ChannelLanes {
+        private final double[] strides;
+        private final long maxWaitNanos;
+        private final Timer[] waitTimers;
+
+        // guarded by this
+        private int available;
+        private final List<ArrayDeque<Waiter>> queues = new ArrayList<>(LANES.length);
+        private final double[] pass;
+        private double virtualTime;
+
+        ChannelLanes(int permits, double[] strides, long maxWaitNanos, Timer[] waitTimers) {
+            this.available = permits;
+            this.strides = strides;
+            this.maxWaitNanos = maxWaitNanos;
+            this.waitTimers = waitTimers;
+            this.pass = new double[LANES.length];
+            for (int i = 0; i < LANES.length; i++) {
+                queues.add(new ArrayDeque<>());
+            }
+        }
+
+        // a permit straight away when one is free and nobody is queued, without a waiter or a future
+        Permit tryAcquire(MessagePriority priority) {
+            int lane = priority.ordinal();
+            synchronized (this) {
+                if (available == 0) {
+                    return null;
+                }
+                for (ArrayDeque<Waiter> queue : queues) {
+                    if (!queue.isEmpty()) {
+                        return null;
+                    }
+                }
+                // same bookkeeping as a grant from an idle lane
+                pass[lane] = Math.max(pass[lane], virtualTime);
+                virtualTime = pass[lane];
+                pass[lane] += strides[lane];
+                available--;
+            }
+            waitTimers[lane].record(0, TimeUnit.NANOSECONDS);
+            return new Permit(this);
+        }
+
+        CompletableFuture<Permit> enqueue(MessagePriority priority) {
+            Waiter waiter = new Waiter();
+            int lane = priority.ordinal();
+            synchronized (this) {
+                ArrayDeque<Waiter> queue = queues.get(lane);
+                if (queue.isEmpty()) {
+                    // an idle lane rejoins at the current virtual time instead of its old, lower pass
+                    pass[lane] = Math.max(pass[lane], virtualTime);
+                }
+                queue.addLast(waiter);
+            }
+            grant();
+            return waiter.granted;
+        }
+
+        void release() {
+            synchronized (this) {
+                available++;
+            }
+            grant();
+        }
+
+        synchronized int queued(MessagePriority lane) {
+            return queues.get(lane.ordinal()).size();
+        }
+
+        // futures are completed outside the lock, completing one runs whatever the caller chained to it
+        private void grant() {
+            while (true) {
+                Waiter next;
+                int lane;
+                synchronized (this) {
+                    lane = -1;
+                    next = null;
+                    while (available > 0 && next == null) {
+                        lane = pickLane();
+                        if (lane < 0) {
+                            return;
+                        }
+                        Waiter head = queues.get(lane).pollFirst();
+                        // cancelled waiters are dropped without costing their lane a turn
+                        if (!head.granted.isCancelled()) {
+                            next = head;
+                            virtualTime = Math.max(virtualTime, pass[lane]);
+                            pass[lane] += strides[lane];
+                            available--;
+                        }
+                    }
+                    if (next == null) {
+                        return;
+                    }
+                }
+
+                Permit permit = new Permit(this);
+                if (next.granted.complete(permit)) {
+                    waitTimers[lane].record(System.nanoTime() - next.enqueuedAt, TimeUnit.NANOSECONDS);
+                } else {
+                    // cancelled while we were choosing it
+                    synchronized (this) {
+                        available++;
+                    }
+                }
+            }
+        }
+
+        // the lane whose head has waited past max-wait the longest, otherwise the lowest pass
+        private int pickLane() {
+            long now = System.nanoTime();
+            int overdue = -1;
+            long oldest = Long.MAX_VALUE;
+            int fairest = -1;
+
+            for (int lane = 0; lane < LANES.length; lane++) {
+                Waiter head = queues.get(lane).peekFirst();
+                if (head == null) {
+                    continue;
+                }
+                if (now - head.enqueuedAt > maxWaitNanos && head.enqueuedAt < oldest) {
+                    overdue = lane;
+                    oldest = head.enqueuedAt;
+                }
+                if (fairest < 0 || pass[lane] < pass[fairest]) {
+                    fairest = lane;
+                }
+            }
+            return overdue >= 0 ? overdue : fairest;
+        }
+    }
+}
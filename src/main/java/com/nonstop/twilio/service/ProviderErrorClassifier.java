@@ -0,0 +1,66 @@
+package com.nonstop.twilio.service;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.nonstop.twilio.enums.FailureType;
+import com.twilio.exception.ApiConnectionException;
+import com.twilio.exception.ApiException;
+
+import io.netty.handler.timeout.ReadTimeoutException;
+
+// maps provider SDK errors and http status codes onto FailureType
+public final class ProviderErrorClassifier {
+    
+    private ProviderErrorClassifier() {
+    }
+    
+    public static FailureType classifyStatus(int statusCode) {
+        if (statusCode == 429) {
+            return FailureType.RATE_LIMITED;
+        }
+        if (statusCode == 408 || statusCode == 504) {
+            return FailureType.TIMEOUT;
+        }
+        if (statusCode >= 500) {
+            return FailureType.TRANSIENT;
+        }
+        if (statusCode >= 400) {
+            return FailureType.INVALID_REQUEST;
+        }
+        return FailureType.PERMANENT;
+    }
+    
+    public static FailureType classify(Throwable error) {
+        boolean networkError = false;
+        
+        for (Throwable e = error; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof ApiException apiException && apiException.getStatusCode() != null) {
+                return classifyStatus(apiException.getStatusCode());
+            }
+            if (e instanceof WebClientResponseException responseException) {
+                return classifyStatus(responseException.getStatusCode().value());
+            }
+            // the request never left, safe to retry
+            if (e instanceof ConnectTimeoutException || e instanceof ConnectException) {
+                return FailureType.TRANSIENT;
+            }
+            // the request may have been delivered before the response timed out
+            if (e instanceof SocketTimeoutException || e instanceof ReadTimeoutException
+                    || e instanceof TimeoutException) {
+                return FailureType.TIMEOUT;
+            }
+            networkError |= e instanceof IOException
+                    || e instanceof WebClientRequestException
+                    || e instanceof ApiConnectionException;
+        }
+        
+        return networkError ? FailureType.TRANSIENT : FailureType.PERMANENT;
+    }
+}
@@ -0,0 +1,213 @@
+package com.nonstop.twilio.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.FailureType;
+import com.nonstop.twilio.enums.MessageChannel;
+
+import reactor.core.publisher.Mono;
+
+// retries retryable failures with jittered exponential backoff and keeps a circuit breaker per channel
+@Component
+public class ProviderResilience {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ProviderResilience.class);
+    
+    @Value("${messaging.resilience.max-attempts:3}")
+    private int maxAttempts;
+    
+    @Value("${messaging.resilience.initial-backoff-ms:200}")
+    private long initialBackoffMs;
+    
+    @Value("${messaging.resilience.max-backoff-ms:5000}")
+    private long maxBackoffMs;
+    
+    // a read timeout may mean the message did go out, so retrying it can send a duplicate
+    @Value("${messaging.resilience.retry-timeouts:false}")
+    private boolean retryTimeouts;
+    
+    @Value("${messaging.resilience.breaker.window-size:20}")
+    private int breakerWindowSize;
+    
+    @Value("${messaging.resilience.breaker.minimum-calls:10}")
+    private int breakerMinimumCalls;
+    
+    @Value("${messaging.resilience.breaker.failure-rate-threshold:50}")
+    private int breakerFailureRateThreshold;
+    
+    @Value("${messaging.resilience.breaker.open-duration-ms:30000}")
+    private long breakerOpenDurationMs;
+    
+    @Value("${messaging.resilience.breaker.half-open-calls:3}")
+    private int breakerHalfOpenCalls;
+    
+    private final Map<MessageChannel, CircuitBreaker> breakers = new EnumMap<>(MessageChannel.class);
+    
+    // built once, an open circuit rejects every send on the channel
+    private final Map<MessageChannel, String> circuitOpenMessages = new EnumMap<>(MessageChannel.class);
+    
+    @PostConstruct
+    public void init() {
+        for (MessageChannel channel : MessageChannel.values()) {
+            breakers.put(channel, new CircuitBreaker(breakerWindowSize, breakerMinimumCalls,
+                    breakerFailureRateThreshold, breakerOpenDurationMs, breakerHalfOpenCalls));
+            circuitOpenMessages.put(channel, "Circuit breaker open for channel: " + channel);
+        }
+    }
+    
+    public MessageResponse execute(MessageRequest request, Supplier<MessageResponse> call) {
+        return execute(request, call, Function.identity(), () -> circuitOpen(request));
+    }
+    
+    // one provider call for several requests, the first response stands for the outcome of the call
+    public List<MessageResponse> executeBatch(List<MessageRequest> requests, Supplier<List<MessageResponse>> call) {
+        return execute(requests.get(0), call, responses -> responses.get(0), () -> {
+            List<MessageResponse> rejected = new ArrayList<>(requests.size());
+            for (MessageRequest request : requests) {
+                rejected.add(circuitOpen(request));
+            }
+            return rejected;
+        });
+    }
+    
+    private <T> T execute(MessageRequest request, Supplier<T> call, Function<T, MessageResponse> outcome,
+            Supplier<T> rejected) {
+        CircuitBreaker breaker = breakers.get(request.getChannel());
+        
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                return rejected.get();
+            }
+            
+            T result;
+            try {
+                result = call.get();
+            } catch (RuntimeException e) {
+                // no response to record, but a half-open trial permit still has to go back
+                recordError(breaker, e);
+                throw e;
+            }
+            MessageResponse response = outcome.apply(result);
+            if (!record(breaker, response) || attempt >= maxAttempts) {
+                return result;
+            }
+            
+            Duration backoff = backoff(attempt);
+            logger.warn("Retrying {} message to {} in {} ms after {} (attempt {}/{})", request.getChannel(),
+                    request.getRecipient(), backoff.toMillis(), response.failureType(), attempt + 1, maxAttempts);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+        }
+    }
+    
+    public Mono<MessageResponse> executeAsync(MessageRequest request, Supplier<Mono<MessageResponse>> call) {
+        return attemptAsync(request, call, 1);
+    }
+    
+    private Mono<MessageResponse> attemptAsync(MessageRequest request, Supplier<Mono<MessageResponse>> call, int attempt) {
+        CircuitBreaker breaker = breakers.get(request.getChannel());
+        if (!breaker.tryAcquire()) {
+            return Mono.just(circuitOpen(request));
+        }
+        
+        // exactly one outcome per attempt, also when it fails with an error or is cancelled before it answers
+        AtomicBoolean recorded = new AtomicBoolean();
+        return call.get()
+                .doOnError(e -> {
+                    if (recorded.compareAndSet(false, true)) {
+                        recordError(breaker, e);
+                    }
+                })
+                .doFinally(signal -> {
+                    if (recorded.compareAndSet(false, true)) {
+                        breaker.onIgnored();
+                    }
+                })
+                .flatMap(response -> {
+                    recorded.set(true);
+                    if (!record(breaker, response) || attempt >= maxAttempts) {
+                        return Mono.just(response);
+                    }
+                    
+                    Duration backoff = backoff(attempt);
+                    logger.warn("Retrying {} message to {} in {} ms after {} (attempt {}/{})", request.getChannel(),
+                            request.getRecipient(), backoff.toMillis(), response.failureType(), attempt + 1, maxAttempts);
+                    return Mono.delay(backoff).then(Mono.defer(() -> attemptAsync(request, call, attempt + 1)));
+                });
+    }
+    
+    public Map<MessageChannel, CircuitBreaker.State> getBreakerStates() {
+        Map<MessageChannel, CircuitBreaker.State> states = new EnumMap<>(MessageChannel.class);
+        breakers.forEach((channel, breaker) -> states.put(channel, breaker.getState()));
+        return Collections.unmodifiableMap(states);
+    }
+    
+    // feeds the breaker and tells whether the failure is worth another attempt
+    private boolean record(CircuitBreaker breaker, MessageResponse response) {
+        if (response.success()) {
+            breaker.onSuccess();
+            return false;
+        }
+        
+        FailureType failureType = response.failureType();
+        if (failureType == FailureType.TRANSIENT || failureType == FailureType.TIMEOUT) {
+            breaker.onFailure();
+        } else {
+            // bad requests, throttling and our own cancellations say nothing about whether the provider is up
+            breaker.onIgnored();
+        }
+        
+        return failureType == FailureType.TRANSIENT
+                || failureType == FailureType.RATE_LIMITED
+                || (failureType == FailureType.TIMEOUT && retryTimeouts);
+    }
+    
+    // an attempt that threw instead of answering, judged like a failed response but never retried
+    private void recordError(CircuitBreaker breaker, Throwable error) {
+        FailureType failureType = ProviderErrorClassifier.classify(error);
+        if (failureType == FailureType.TRANSIENT || failureType == FailureType.TIMEOUT) {
+            breaker.onFailure();
+        } else {
+            breaker.onIgnored();
+        }
+    }
+    
+    // "full jitter": a random delay between 0 and the exponential cap
+    private Duration backoff(int attempt) {
+        long cap = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+    
+    private MessageResponse circuitOpen(MessageRequest request) {
+        return new MessageResponse(
+            false,
+            circuitOpenMessages.get(request.getChannel()),
+            null,
+            request.getChannel(),
+            request.getRecipient(),
+            FailureType.CIRCUIT_OPEN
+        );
+    }
+}
@@ -0,0 +1,121 @@
+package com.nonstop.twilio.service;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.enums.MessageChannel;
+
+// one token bucket per (channel, sender), e.g. per Twilio number or per Facebook page
+@Component
+public class RateLimiterRegistry {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiterRegistry.class);
+    
+    @Value("${messaging.rate-limit.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${messaging.rate-limit.sms-per-second:10}")
+    private double smsPerSecond;
+    
+    @Value("${messaging.rate-limit.whatsapp-per-second:20}")
+    private double whatsAppPerSecond;
+    
+    @Value("${messaging.rate-limit.email-per-second:100}")
+    private double emailPerSecond;
+    
+    @Value("${messaging.rate-limit.facebook-per-second:200}")
+    private double facebookPerSecond;
+    
+    @Value("${messaging.rate-limit.burst:10}")
+    private int burst;
+    
+    // sends that would have to queue longer than this fail instead
+    @Value("${messaging.rate-limit.max-wait-ms:30000}")
+    private long maxWaitMs;
+    
+    private final Map<MessageChannel, Double> ratesPerSecond = new EnumMap<>(MessageChannel.class);
+    
+    private final Map<MessageChannel, Map<String, TokenBucketRateLimiter>> limiters = new EnumMap<>(MessageChannel.class);
+    
+    @PostConstruct
+    public void init() {
+        ratesPerSecond.put(MessageChannel.SMS, smsPerSecond);
+        ratesPerSecond.put(MessageChannel.WHATSAPP, whatsAppPerSecond);
+        ratesPerSecond.put(MessageChannel.EMAIL, emailPerSecond);
+        ratesPerSecond.put(MessageChannel.FACEBOOK, facebookPerSecond);
+        
+        for (MessageChannel channel : MessageChannel.values()) {
+            limiters.put(channel, new ConcurrentHashMap<>());
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    // waits for a slot, returns false if the queue is already longer than max-wait-ms
+    public boolean acquire(MessageChannel channel, String senderId) {
+        return !enabled || limiter(channel, senderId).acquire();
+    }
+    
+    // non-blocking variant: how long to wait for the reserved slot, or null if the queue is too long
+    public Duration reserve(MessageChannel channel, String senderId) {
+        if (!enabled) {
+            return Duration.ZERO;
+        }
+        long waitNanos = limiter(channel, senderId).reserve();
+        return waitNanos < 0 ? null : Duration.ofNanos(waitNanos);
+    }
+    
+    public void onSuccess(MessageChannel channel, String senderId) {
+        if (enabled) {
+            limiter(channel, senderId).onSuccess();
+        }
+    }
+    
+    // called by the providers when they get a 429, retryAfter is the raw Retry-After header (may be null)
+    public void onThrottled(MessageChannel channel, String senderId, String retryAfter) {
+        if (!enabled) {
+            return;
+        }
+        TokenBucketRateLimiter limiter = limiter(channel, senderId);
+        limiter.onThrottled(parseRetryAfter(retryAfter));
+        logger.warn("{} sender {} was throttled, slowing down to {} msg/s", channel, senderId,
+                String.format("%.2f", limiter.getCurrentRate()));
+    }
+    
+    private TokenBucketRateLimiter limiter(MessageChannel channel, String senderId) {
+        return limiters.get(channel).computeIfAbsent(senderId,
+                key -> new TokenBucketRateLimiter(ratesPerSecond.get(channel), burst, Duration.ofMillis(maxWaitMs)));
+    }
+    
+    // Retry-After is either a number of seconds or an HTTP date
+    static Duration parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                Duration wait = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return wait.isNegative() ? Duration.ZERO : wait;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
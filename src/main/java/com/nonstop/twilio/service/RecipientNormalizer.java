@@ -0,0 +1,215 @@
+package com.nonstop.twilio.service;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.enums.MessageChannel;
+
+// validates recipients and brings them into the form the provider expects:
+//   SMS       E.164, e.g. +15551234567 (spaces, dashes, dots and brackets are dropped, a leading 00 becomes +)
+//   WHATSAPP  whatsapp:+15551234567
+//   EMAIL     local@domain with the domain lowercased
+//   FACEBOOK  numeric page-scoped id
+// the scanners are hand-written, a recipient that is already canonical is returned as is
+// without allocating. anything that had to be rewritten is cached, bulk sends tend to repeat recipients
+@Component
+public class RecipientNormalizer {
+
+    private static final String WHATSAPP_PREFIX = "whatsapp:";
+
+    // E.164 allows at most 15 digits after the +
+    private static final int MAX_PHONE_DIGITS = 15;
+    private static final int MIN_PHONE_DIGITS = 7;
+
+    private static final int MAX_PSID_LENGTH = 32;
+
+    // same limits as the old regex: local part [A-Za-z0-9+_.-], domain [A-Za-z0-9.-], tld of 2+ letters
+    private static final boolean[] LOCAL_CHARS = new boolean[128];
+    private static final boolean[] DOMAIN_CHARS = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            LOCAL_CHARS[c] = DOMAIN_CHARS[c] = true;
+            LOCAL_CHARS[Character.toUpperCase(c)] = DOMAIN_CHARS[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            LOCAL_CHARS[c] = DOMAIN_CHARS[c] = true;
+        }
+        LOCAL_CHARS['+'] = LOCAL_CHARS['_'] = LOCAL_CHARS['.'] = LOCAL_CHARS['-'] = true;
+        DOMAIN_CHARS['.'] = DOMAIN_CHARS['-'] = true;
+    }
+
+    @Value("${messaging.recipients.cache-size:10000}")
+    private int cacheSize;
+
+    private final Map<MessageChannel, Map<String, String>> canonicalCache = new EnumMap<>(MessageChannel.class);
+
+    @PostConstruct
+    public void init() {
+        for (MessageChannel channel : MessageChannel.values()) {
+            canonicalCache.put(channel, new ConcurrentHashMap<>());
+        }
+    }
+
+    // canonical recipient, or null when it is not valid for the channel
+    public String normalize(MessageChannel channel, String recipient) {
+        if (channel == null || recipient == null) {
+            return null;
+        }
+
+        Map<String, String> cache = canonicalCache.get(channel);
+        String cached = cache.get(recipient);
+        if (cached != null) {
+            return cached;
+        }
+
+        String canonical = switch (channel) {
+            case SMS -> normalizePhone(recipient);
+            case WHATSAPP -> normalizeWhatsApp(recipient);
+            case EMAIL -> normalizeEmail(recipient);
+            case FACEBOOK -> isValidPsid(recipient) ? recipient : null;
+        };
+
+        // canonical input maps to itself, no point keeping it
+        if (canonical != null && canonical != recipient) {
+            if (cache.size() >= cacheSize) {
+                cache.clear();
+            }
+            cache.put(recipient, canonical);
+        }
+        return canonical;
+    }
+
+    public boolean isValid(MessageChannel channel, String recipient) {
+        return normalize(channel, recipient) != null;
+    }
+
+    static String normalizePhone(String value) {
+        return isCanonicalPhone(value, 0) ? value : rewritePhone(value);
+    }
+
+    static String normalizeWhatsApp(String value) {
+        if (value.startsWith(WHATSAPP_PREFIX) && isCanonicalPhone(value, WHATSAPP_PREFIX.length())) {
+            return value;
+        }
+
+        String number = value.regionMatches(true, 0, WHATSAPP_PREFIX, 0, WHATSAPP_PREFIX.length())
+                ? value.substring(WHATSAPP_PREFIX.length())
+                : value;
+        String phone = rewritePhone(number);
+        return phone != null ? WHATSAPP_PREFIX + phone : null;
+    }
+
+    // + followed by 7 to 15 digits, the first one not 0
+    private static boolean isCanonicalPhone(String value, int from) {
+        int digits = value.length() - from - 1;
+        if (digits < MIN_PHONE_DIGITS || digits > MAX_PHONE_DIGITS
+                || value.charAt(from) != '+' || value.charAt(from + 1) == '0') {
+            return false;
+        }
+        for (int i = from + 1; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // slow path for numbers written with separators or a 00 prefix
+    private static String rewritePhone(String value) {
+        StringBuilder canonical = new StringBuilder(MAX_PHONE_DIGITS + 1).append('+');
+        String trimmed = value.trim();
+        int i = 0;
+
+        if (trimmed.startsWith("+")) {
+            i = 1;
+        } else if (trimmed.startsWith("00")) {
+            i = 2;
+        } else {
+            return null;
+        }
+
+        for (; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c >= '0' && c <= '9') {
+                canonical.append(c);
+            } else if (c != ' ' && c != '-' && c != '.' && c != '(' && c != ')') {
+                return null;
+            }
+        }
+
+        String phone = canonical.toString();
+        return isCanonicalPhone(phone, 0) ? phone : null;
+    }
+
+    static String normalizeEmail(String value) {
+        int length = value.length();
+        int at = -1;
+        int lastDot = -1;
+        boolean upperInDomain = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 128) {
+                return null;
+            }
+            if (c == '@') {
+                if (at >= 0) {
+                    return null;
+                }
+                at = i;
+            } else if (at < 0) {
+                if (!LOCAL_CHARS[c]) {
+                    return null;
+                }
+            } else {
+                if (!DOMAIN_CHARS[c]) {
+                    return null;
+                }
+                if (c == '.') {
+                    lastDot = i;
+                } else if (c >= 'A' && c <= 'Z') {
+                    upperInDomain = true;
+                }
+            }
+        }
+
+        // non-empty local part and domain label, then a tld of at least two letters
+        if (at < 1 || lastDot < at + 2 || length - lastDot - 1 < 2) {
+            return null;
+        }
+        for (int i = lastDot + 1; i < length; i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) {
+                return null;
+            }
+        }
+
+        if (!upperInDomain) {
+            return value;
+        }
+        return value.substring(0, at + 1) + value.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+
+    static boolean isValidPsid(String value) {
+        int length = value.length();
+        if (length == 0 || length > MAX_PSID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
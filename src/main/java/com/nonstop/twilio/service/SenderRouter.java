@@ -0,0 +1,302 @@
+package com.nonstop.twilio.service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.dto.SenderHealth;
+import com.nonstop.twilio.enums.FailureType;
+import com.nonstop.twilio.enums.MessageChannel;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// spreads each channel's sends over all of its senders, every number, messaging service or api key of every
+// provider registered for it. each sender keeps a moving average of its call latency and of its failure rate.
+// a send looks at two senders picked at random (by provider weight) and takes the cheaper one, cost being
+// latency * (in flight + 1) / success rate, so traffic drifts away from a slow or failing sender without all
+// of it piling onto the single fastest one. senders failing more than unhealthy-error-rate are skipped while a
+// healthy one is left, and since the averages decay with time an avoided sender is tried again later
+@Component
+public class SenderRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SenderRouter.class);
+
+    // how fast the averages forget, per unit of time since the last update
+    @Value("${messaging.routing.decay-ms:10000}")
+    private long decayMs;
+
+    // least weight of a new sample, so the averages move quickly under heavy traffic too
+    @Value("${messaging.routing.ewma-alpha:0.1}")
+    private double alpha;
+
+    @Value("${messaging.routing.unhealthy-error-rate:0.5}")
+    private double unhealthyErrorRate;
+
+    @Autowired
+    private MessageServiceRegistry messageServiceRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<MessageChannel, Sender[]> senders = new EnumMap<>(MessageChannel.class);
+    private final Map<MessageChannel, Counter> failovers = new EnumMap<>(MessageChannel.class);
+
+    private double decayNanos;
+
+    @PostConstruct
+    public void init() {
+        decayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, decayMs));
+
+        for (MessageChannel channel : messageServiceRegistry.getSupportedChannels()) {
+            String channelTag = channel.name().toLowerCase();
+            List<Sender> channelSenders = new ArrayList<>();
+            for (MessageService service : messageServiceRegistry.getServices(channel)) {
+                for (String senderId : service.getSenderIds()) {
+                    Sender sender = new Sender(this, channel, service, senderId, Math.max(1, service.getWeight()));
+                    channelSenders.add(sender);
+
+                    Gauge.builder("messaging.routing.latency", sender, s -> s.health(System.nanoTime()).getLatencyMs())
+                            .description("Moving average of the sender's provider call latency in milliseconds")
+                            .tags("channel", channelTag, "sender", senderId)
+                            .register(meterRegistry);
+                    Gauge.builder("messaging.routing.error.rate", sender, s -> s.health(System.nanoTime()).getErrorRate())
+                            .description("Moving average of the sender's failure rate")
+                            .tags("channel", channelTag, "sender", senderId)
+                            .register(meterRegistry);
+                }
+            }
+            senders.put(channel, channelSenders.toArray(new Sender[0]));
+            failovers.put(channel, meterRegistry.counter("messaging.routing.failovers", "channel", channelTag));
+            logger.info("{} sender(s) for {}: {}", channelSenders.size(), channel,
+                    channelSenders.stream().map(Sender::getSenderId).toList());
+        }
+    }
+
+    public boolean supports(MessageChannel channel) {
+        return channel != null && senders.containsKey(channel);
+    }
+
+    // the sender for a single attempt, null when nothing supports the channel
+    public Sender choose(MessageChannel channel) {
+        return channel != null ? choose(channel, null, null) : null;
+    }
+
+    // the senders for one send and its retries, each retry moves to another sender when there is one
+    public Attempts attempts(MessageChannel channel) {
+        return new Attempts(channel, null, null);
+    }
+
+    // same, starting with first and staying with its provider, for batches that only that provider can send
+    public Attempts attempts(Sender first) {
+        return new Attempts(first.channel, first.service, first);
+    }
+
+    public Map<MessageChannel, List<SenderHealth>> getHealth() {
+        long now = System.nanoTime();
+        Map<MessageChannel, List<SenderHealth>> health = new EnumMap<>(MessageChannel.class);
+        senders.forEach((channel, channelSenders) -> {
+            List<SenderHealth> states = new ArrayList<>(channelSenders.length);
+            for (Sender sender : channelSenders) {
+                states.add(sender.health(now));
+            }
+            health.put(channel, states);
+        });
+        return health;
+    }
+
+    // power of two choices among the healthy senders, or among all of them when none is healthy
+    private Sender choose(MessageChannel channel, MessageService service, Sender exclude) {
+        Sender[] candidates = senders.get(channel);
+        if (candidates == null) {
+            return null;
+        }
+        if (candidates.length == 1) {
+            return candidates[0];
+        }
+
+        long now = System.nanoTime();
+        Sender first = pick(candidates, service, exclude, null, now, true);
+        boolean healthyOnly = first != null;
+        if (first == null) {
+            first = pick(candidates, service, exclude, null, now, false);
+        }
+        if (first == null) {
+            // exclude was the only one left
+            return exclude;
+        }
+
+        Sender second = pick(candidates, service, exclude, first, now, healthyOnly);
+        if (second == null) {
+            return first;
+        }
+        return first.cost(now) <= second.cost(now) ? first : second;
+    }
+
+    // weighted random pick among the senders that qualify, null when none does
+    private Sender pick(Sender[] candidates, MessageService service, Sender exclude, Sender other, long now,
+            boolean healthyOnly) {
+        int total = 0;
+        for (Sender candidate : candidates) {
+            if (qualifies(candidate, service, exclude, other, now, healthyOnly)) {
+                total += candidate.weight;
+            }
+        }
+        if (total == 0) {
+            return null;
+        }
+
+        int target = ThreadLocalRandom.current().nextInt(total);
+        for (Sender candidate : candidates) {
+            if (qualifies(candidate, service, exclude, other, now, healthyOnly)) {
+                target -= candidate.weight;
+                if (target < 0) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean qualifies(Sender candidate, MessageService service, Sender exclude, Sender other, long now,
+            boolean healthyOnly) {
+        return candidate != exclude && candidate != other
+                && (service == null || candidate.service == service)
+                && (!healthyOnly || candidate.errorRate(now) <= unhealthyErrorRate);
+    }
+
+    // failures that say something about the sender rather than about the message
+    private static boolean countsAgainstSender(FailureType failureType) {
+        return failureType == FailureType.TRANSIENT
+                || failureType == FailureType.TIMEOUT
+                || failureType == FailureType.RATE_LIMITED;
+    }
+
+    // the senders tried by one send, used from one thread at a time
+    public final class Attempts {
+        private final MessageChannel channel;
+        private final MessageService service;
+        private Sender next;
+        private Sender previous;
+
+        private Attempts(MessageChannel channel, MessageService service, Sender first) {
+            this.channel = channel;
+            this.service = service;
+            this.next = first;
+        }
+
+        public Sender next() {
+            Sender sender = next != null ? next : choose(channel, service, previous);
+            next = null;
+            if (previous != null && sender != previous) {
+                failovers.get(channel).increment();
+                logger.info("Failing over {} send from {} to {}", channel, previous.senderId, sender.senderId);
+            }
+            previous = sender;
+            return sender;
+        }
+    }
+
+    public static final class Sender {
+        private final SenderRouter router;
+        private final MessageChannel channel;
+        private final MessageService service;
+        private final String senderId;
+        private final int weight;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        // guarded by this, latency is 0 until the first call so a new sender gets tried right away
+        private double latencyNanos;
+        private double errorRate;
+        private long updatedAt = System.nanoTime();
+
+        private Sender(SenderRouter router, MessageChannel channel, MessageService service, String senderId, int weight) {
+            this.router = router;
+            this.channel = channel;
+            this.service = service;
+            this.senderId = senderId;
+            this.weight = weight;
+        }
+
+        public MessageService getService() {
+            return service;
+        }
+
+        public String getSenderId() {
+            return senderId;
+        }
+
+        // call before the provider call, the result goes to end or endWithError
+        public long begin() {
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        public void end(long start, MessageResponse response) {
+            inFlight.decrementAndGet();
+            record(System.nanoTime() - start, !response.success() && countsAgainstSender(response.failureType()));
+        }
+
+        public void endWithError(long start) {
+            inFlight.decrementAndGet();
+            record(System.nanoTime() - start, true);
+        }
+
+        // given up before the provider answered, says nothing about the sender
+        public void cancelled() {
+            inFlight.decrementAndGet();
+        }
+
+        // not attempted, e.g. the sender's rate limiter queue is full
+        public void rejected() {
+            record(-1, true);
+        }
+
+        private synchronized void record(long latency, boolean failed) {
+            long now = System.nanoTime();
+            double weightOfSample = Math.max(router.alpha, 1 - Math.exp(-(now - updatedAt) / router.decayNanos));
+            if (latency >= 0) {
+                latencyNanos = latencyNanos == 0 ? latency : latencyNanos + (latency - latencyNanos) * weightOfSample;
+            }
+            errorRate += ((failed ? 1 : 0) - errorRate) * weightOfSample;
+            updatedAt = now;
+        }
+
+        // the failure rate fades while nothing is sent, so an avoided sender gets another chance
+        private synchronized double errorRate(long now) {
+            return errorRate * Math.exp(-Math.max(0, now - updatedAt) / router.decayNanos);
+        }
+
+        private double cost(long now) {
+            double latency;
+            synchronized (this) {
+                latency = latencyNanos;
+            }
+            return latency * (inFlight.get() + 1) / Math.max(0.01, 1 - errorRate(now));
+        }
+
+        SenderHealth health(long now) {
+            double latency;
+            synchronized (this) {
+                latency = latencyNanos;
+            }
+            double failures = errorRate(now);
+            return new SenderHealth(senderId, service.getClass().getSimpleName(), latency / 1e6, failures,
+                    inFlight.get(), failures <= router.unhealthyErrorRate);
+        }
+    }
+}
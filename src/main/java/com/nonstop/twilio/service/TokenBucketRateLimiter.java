@@ -0,0 +1,86 @@
+package com.nonstop.twilio.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+// lock-free token bucket (GCRA form): callers reserve the next free slot with a CAS and wait until it comes up,
+// so sends go out in reservation order instead of being rejected. the rate backs off when the provider throttles
+// us and creeps back to the configured rate on success
+public class TokenBucketRateLimiter {
+
+    // never slow down below 1/16 of the configured rate
+    private static final int MAX_BACKOFF_FACTOR = 16;
+
+    private final long baseIntervalNanos;
+    private final long burstToleranceNanos;
+    private final long maxWaitNanos;
+
+    // theoretical arrival time of the next request
+    private final AtomicLong nextFreeNanos;
+
+    // current spacing between requests, grows on throttling
+    private final AtomicLong intervalNanos;
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst, Duration maxWait) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.baseIntervalNanos = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+        this.burstToleranceNanos = (burst - 1) * baseIntervalNanos;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.intervalNanos = new AtomicLong(baseIntervalNanos);
+        this.nextFreeNanos = new AtomicLong(System.nanoTime() - burstToleranceNanos);
+    }
+
+    // reserves a slot and returns how long to wait before using it, or -1 if the wait would exceed the limit
+    public long reserve() {
+        while (true) {
+            long now = System.nanoTime();
+            long nextFree = nextFreeNanos.get();
+            long start = Math.max(nextFree, now - burstToleranceNanos);
+            long waitNanos = Math.max(0, start - now);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            if (nextFreeNanos.compareAndSet(nextFree, start + intervalNanos.get())) {
+                return waitNanos;
+            }
+        }
+    }
+
+    // blocking variant of reserve, returns false when the wait is too long or the thread is interrupted
+    public boolean acquire() {
+        long waitNanos = reserve();
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(waitNanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // provider returned 429: halve the rate and, if it told us how long to back off, hold everything until then
+    public void onThrottled(Duration retryAfter) {
+        intervalNanos.getAndUpdate(interval -> Math.min(interval * 2, baseIntervalNanos * MAX_BACKOFF_FACTOR));
+
+        long resumeAt = System.nanoTime() + (retryAfter != null ? retryAfter.toNanos() : intervalNanos.get());
+        nextFreeNanos.getAndUpdate(nextFree -> Math.max(nextFree, resumeAt));
+    }
+
+    // additive recovery towards the configured rate
+    public void onSuccess() {
+        if (intervalNanos.get() > baseIntervalNanos) {
+            intervalNanos.getAndUpdate(interval -> Math.max(baseIntervalNanos, interval - baseIntervalNanos / 8));
+        }
+    }
+
+    public double getCurrentRate() {
+        return 1_000_000_000d / intervalNanos.get();
+    }
+}
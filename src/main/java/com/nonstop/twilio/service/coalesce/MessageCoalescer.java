@@ -0,0 +1,260 @@
+package com.nonstop.twilio.service.coalesce;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.enums.MessagePriority;
+import com.nonstop.twilio.service.RecipientNormalizer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+// collects messages to the same recipient on the same channel for window-ms and sends them as few provider calls
+// as possible. identical messages are sent once, and on the merge channels different texts are joined into one
+// message up to the channel's length limit. every caller gets the response of the send its message went out in.
+// off by default, a message waits up to window-ms longer even when nothing else arrives for its recipient
+@Component
+public class MessageCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageCoalescer.class);
+
+    private static final String SEPARATOR = "\n";
+
+    // longest body the provider takes, Twilio splits SMS into segments itself
+    private static final Map<MessageChannel, Integer> MAX_LENGTH = Map.of(
+            MessageChannel.SMS, 1600,
+            MessageChannel.WHATSAPP, 1600,
+            MessageChannel.FACEBOOK, 2000);
+
+    @Value("${messaging.coalescing.enabled:false}")
+    private boolean enabled;
+
+    @Value("${messaging.coalescing.window-ms:5}")
+    private long windowMs;
+
+    // a full window is sent right away
+    @Value("${messaging.coalescing.max-messages:10}")
+    private int maxMessages;
+
+    @Value("${messaging.coalescing.channels:SMS,WHATSAPP,FACEBOOK,EMAIL}")
+    private MessageChannel[] channels;
+
+    // channels whose different texts are joined, on the others only identical messages are folded together
+    @Value("${messaging.coalescing.merge-channels:SMS,WHATSAPP,FACEBOOK}")
+    private MessageChannel[] mergeChannels;
+
+    @Autowired
+    private RecipientNormalizer recipientNormalizer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<List<Object>, Window> open = new ConcurrentHashMap<>();
+
+    private Set<MessageChannel> coalesced;
+    private Set<MessageChannel> merged;
+    private Duration window;
+
+    private final Map<MessageChannel, Counter> received = new EnumMap<>(MessageChannel.class);
+    private final Map<MessageChannel, Counter> sent = new EnumMap<>(MessageChannel.class);
+
+    @PostConstruct
+    public void init() {
+        coalesced = channels.length == 0 ? EnumSet.noneOf(MessageChannel.class) : EnumSet.copyOf(List.of(channels));
+        merged = mergeChannels.length == 0 ? EnumSet.noneOf(MessageChannel.class) : EnumSet.copyOf(List.of(mergeChannels));
+        merged.retainAll(MAX_LENGTH.keySet());
+        window = Duration.ofMillis(windowMs);
+
+        for (MessageChannel channel : MessageChannel.values()) {
+            String channelTag = channel.name().toLowerCase();
+            received.put(channel, meterRegistry.counter("messaging.coalescing.messages", "channel", channelTag));
+            sent.put(channel, meterRegistry.counter("messaging.coalescing.sends", "channel", channelTag));
+        }
+    }
+
+    public boolean accepts(MessageRequest request) {
+        return enabled && request.getChannel() != null && request.getRecipient() != null
+                && coalesced.contains(request.getChannel());
+    }
+
+    // completes with the response of the send the message went out in, send is called once per provider call
+    public CompletableFuture<MessageResponse> submit(MessageRequest request,
+            Function<MessageRequest, Mono<MessageResponse>> send) {
+        received.get(request.getChannel()).increment();
+        Pending pending = new Pending(request);
+        List<Object> key = keyOf(request);
+
+        while (true) {
+            Window current = open.get(key);
+            if (current == null) {
+                Window created = new Window(key, send);
+                current = open.putIfAbsent(key, created);
+                if (current == null) {
+                    current = created;
+                    Window timed = created;
+                    Mono.delay(window).subscribe(tick -> close(timed));
+                }
+            }
+
+            boolean full;
+            synchronized (current) {
+                if (current.closed) {
+                    // flushed between get and lock, open a new one
+                    continue;
+                }
+                current.messages.add(pending);
+                full = current.messages.size() >= maxMessages;
+            }
+            if (full) {
+                close(current);
+            }
+            return pending.response;
+        }
+    }
+
+    private List<Object> keyOf(MessageRequest request) {
+        String recipient = recipientNormalizer.normalize(request.getChannel(), request.getRecipient());
+        return List.of(request.getChannel(), recipient != null ? recipient : request.getRecipient());
+    }
+
+    private void close(Window closing) {
+        synchronized (closing) {
+            if (closing.closed) {
+                return;
+            }
+            closing.closed = true;
+        }
+        open.remove(closing.key, closing);
+        flush(closing);
+    }
+
+    private void flush(Window closing) {
+        List<Pending> messages = closing.messages;
+        if (messages.size() == 1) {
+            send(closing, messages.get(0).request, messages);
+            return;
+        }
+
+        // identical messages fold into one, first arrival first
+        Map<List<String>, List<Pending>> distinct = new LinkedHashMap<>();
+        for (Pending pending : messages) {
+            distinct.computeIfAbsent(contentOf(pending.request), content -> new ArrayList<>()).add(pending);
+        }
+
+        MessageChannel channel = messages.get(0).request.getChannel();
+        if (!merged.contains(channel)) {
+            for (List<Pending> same : distinct.values()) {
+                send(closing, same.get(0).request, same);
+            }
+            return;
+        }
+
+        // join the texts while they fit, a message that is too long on its own still goes out by itself
+        int maxLength = MAX_LENGTH.get(channel);
+        StringBuilder text = new StringBuilder();
+        List<Pending> included = new ArrayList<>();
+        for (List<Pending> same : distinct.values()) {
+            String body = same.get(0).request.getMessage() != null ? same.get(0).request.getMessage() : "";
+            if (!included.isEmpty() && text.length() + SEPARATOR.length() + body.length() > maxLength) {
+                send(closing, mergedRequest(included, text.toString()), included);
+                text.setLength(0);
+                included = new ArrayList<>();
+            }
+            if (!included.isEmpty()) {
+                text.append(SEPARATOR);
+            }
+            text.append(body);
+            included.addAll(same);
+        }
+        send(closing, mergedRequest(included, text.toString()), included);
+    }
+
+    private void send(Window closing, MessageRequest request, List<Pending> waiting) {
+        MessageChannel channel = request.getChannel();
+        sent.get(channel).increment();
+        if (waiting.size() > 1) {
+            logger.info("Sending {} {} messages to {} as one", waiting.size(), channel, request.getRecipient());
+        }
+
+        Mono<MessageResponse> call;
+        try {
+            call = closing.send.apply(request);
+        } catch (RuntimeException e) {
+            waiting.forEach(pending -> pending.response.completeExceptionally(e));
+            return;
+        }
+        call.subscribe(
+                response -> waiting.forEach(pending -> pending.response.complete(response)),
+                e -> waiting.forEach(pending -> pending.response.completeExceptionally(e)));
+    }
+
+    // what has to be equal for two messages to be the same message
+    private static List<String> contentOf(MessageRequest request) {
+        return Arrays.asList(request.getMessage(), request.getSubject(), request.getHtmlContent());
+    }
+
+    // the most urgent priority of the messages it carries
+    private static MessageRequest mergedRequest(List<Pending> included, String text) {
+        MessageRequest first = included.get(0).request;
+        if (included.size() == 1) {
+            return first;
+        }
+
+        MessagePriority priority = null;
+        for (Pending pending : included) {
+            MessagePriority candidate = pending.request.getPriority();
+            if (candidate != null && (priority == null || candidate.ordinal() < priority.ordinal())) {
+                priority = candidate;
+            }
+        }
+        MessageRequest merged = new MessageRequest(first.getChannel(), first.getRecipient(), text,
+                first.getSubject(), first.getHtmlContent());
+        merged.setPriority(priority);
+        return merged;
+    }
+
+    private static final class Pending {
+        private final MessageRequest request;
+        private final CompletableFuture<MessageResponse> response = new CompletableFuture<>();
+
+        Pending(MessageRequest request) {
+            this.request = request;
+        }
+    }
+
+    private static final class Window {
+        private final List<Object> key;
+        private final Function<MessageRequest, Mono<MessageResponse>> send;
+
+        // guarded by this until closed, only read by the flush afterwards
+        private final List<Pending> messages = new ArrayList<>();
+        private boolean closed;
+
+        Window(List<Object> key, Function<MessageRequest, Mono<MessageResponse>> send) {
+            this.key = key;
+            this.send = send;
+        }
+    }
+}
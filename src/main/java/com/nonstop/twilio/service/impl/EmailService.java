@@ -1,17 +1,29 @@
 package com.nonstop.twilio.service.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import com.nonstop.twilio.dto.MessageRequest;
 import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.FailureType;
 import com.nonstop.twilio.enums.MessageChannel;
-import com.nonstop.twilio.service.MessageService;
+import com.nonstop.twilio.service.BatchMessageService;
+import com.nonstop.twilio.service.MessageIdGenerator;
+import com.nonstop.twilio.service.ProviderErrorClassifier;
+import com.nonstop.twilio.service.RateLimiterRegistry;
+import com.nonstop.twilio.service.RecipientNormalizer;
 import com.sendgrid.Method;
 import com.sendgrid.Request;
 import com.sendgrid.Response;
@@ -19,14 +31,23 @@ import com.sendgrid.SendGrid;
 import com.sendgrid.helpers.mail.Mail;
 import com.sendgrid.helpers.mail.objects.Content;
 import com.sendgrid.helpers.mail.objects.Email;
+import com.sendgrid.helpers.mail.objects.Personalization;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 @Service
-public class EmailService implements MessageService {
+public class EmailService implements BatchMessageService {
     
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
     
-    @Value("${sendgrid.api-key}")
-    private String sendGridApiKey;
+    private static final String MESSAGE_ID_HEADER = "X-Message-Id";
+    
+    // marks ids we made up because SendGrid sent none
+    private static final String GENERATED_ID_PREFIX = "SG_";
+    
+    @Autowired
+    private SendGrid sendGrid;
     
     @Value("${sendgrid.from-email}")
     private String fromEmail;
@@ -34,65 +55,117 @@ public class EmailService implements MessageService {
     @Value("${sendgrid.from-name}")
     private String fromName;
     
+    // SendGrid accepts at most 1000 personalizations per mail/send call
+    @Value("${sendgrid.batch.max-recipients:1000}")
+    private int maxBatchSize;
+    
+    // more senders to spread email over, see SenderRouter. name=api-key sends with another key or account,
+    // a bare name sends as that subuser of the main account
+    @Value("${sendgrid.additional-senders:}")
+    private String[] additionalSenders;
+    
+    @Autowired
+    private Scheduler messagingOffloadScheduler;
+    
+    @Autowired
+    private RateLimiterRegistry rateLimiterRegistry;
+    
+    @Autowired
+    private RecipientNormalizer recipientNormalizer;
+    
+    @Autowired
+    private MessageIdGenerator messageIdGenerator;
+    
+    private List<String> senderIds;
+    
+    // request headers of each additional sender, they all share the main client's connection pool
+    private final Map<String, Map<String, String>> senderHeaders = new HashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        List<String> ids = new ArrayList<>();
+        ids.add(fromEmail);
+        for (String sender : additionalSenders) {
+            if (sender.isBlank()) {
+                continue;
+            }
+            Map<String, String> headers = new HashMap<>(sendGrid.getRequestHeaders());
+            int separator = sender.indexOf('=');
+            String id;
+            if (separator > 0) {
+                id = sender.substring(0, separator).trim();
+                headers.put("Authorization", "Bearer " + sender.substring(separator + 1).trim());
+            } else {
+                id = sender.trim();
+                headers.put("on-behalf-of", id);
+            }
+            if (senderHeaders.putIfAbsent(id, Map.copyOf(headers)) != null || id.equals(fromEmail)) {
+                throw new IllegalStateException("Duplicate SendGrid sender " + id);
+            }
+            ids.add(id);
+        }
+        senderIds = List.copyOf(ids);
+    }
+    
+    // SendGrid's client blocks on the http call, keep it on the offload scheduler
+    @Override
+    public Mono<MessageResponse> sendMessageAsync(MessageRequest request) {
+        return sendMessageAsync(request, fromEmail);
+    }
+    
+    @Override
+    public Mono<MessageResponse> sendMessageAsync(MessageRequest request, String senderId) {
+        return Mono.fromCallable(() -> sendMessage(request, senderId))
+                .subscribeOn(messagingOffloadScheduler);
+    }
+    
     @Override
     public boolean supports(MessageChannel channel) {
         return MessageChannel.EMAIL.equals(channel);
     }
     
+    @Override
+    public String getSenderId() {
+        return fromEmail;
+    }
+    
+    @Override
+    public List<String> getSenderIds() {
+        return senderIds;
+    }
+    
     @Override
     public MessageResponse sendMessage(MessageRequest request) {
+        return sendMessage(request, fromEmail);
+    }
+    
+    @Override
+    public MessageResponse sendMessage(MessageRequest request, String senderId) {
         try {
             logger.info("Sending email via SendGrid to: {}", request.getRecipient());
             
             // validate email
-            if (!isValidEmail(request.getRecipient())) {
+            String recipient = recipientNormalizer.normalize(MessageChannel.EMAIL, request.getRecipient());
+            if (recipient == null) {
                 logger.error("Invalid email address: {}", request.getRecipient());
                 return new MessageResponse(
                     false,
                     "Invalid email address format: " + request.getRecipient(),
                     null,
                     MessageChannel.EMAIL,
-                    request.getRecipient()
+                    request.getRecipient(),
+                    FailureType.INVALID_REQUEST
                 );
             }
             
-            SendGrid sg = new SendGrid(sendGridApiKey);
-            
-            Email from = new Email(fromEmail, fromName);
-            Email to = new Email(request.getRecipient());
-            
-            // use provided subject or default
-            String subject = StringUtils.hasText(request.getSubject()) 
-                ? request.getSubject() 
-                : "Message from Twilio Messaging Service";
-            
-            // create content (HTML or plain text)
-            Content content;
-            if (StringUtils.hasText(request.getHtmlContent())) {
-                content = new Content("text/html", request.getHtmlContent());
-            } else {
-                content = new Content("text/plain", request.getMessage());
-            }
-            
-            // create mail
-            Mail mail = new Mail(from, subject, to, content);
-            
-            // create request
-            Request sgRequest = new Request();
-            sgRequest.setMethod(Method.POST);
-            sgRequest.setEndpoint("mail/send");
-            sgRequest.setBody(mail.build());
-            
             // send email
-            Response response = sg.api(sgRequest);
+            Response response = send(buildMail(request, recipient), senderId);
             
             if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
                 logger.info("Email sent successfully via SendGrid to: {} with status code: {}", 
                     request.getRecipient(), response.getStatusCode());
                 
-                // generate message ID for tracking
-                String messageId = "SG_" + System.currentTimeMillis() + "_" + 
-                    Math.abs(request.getRecipient().hashCode());
+                String messageId = messageId(response);
                 
                 return new MessageResponse(
                     true,
@@ -104,13 +177,15 @@ public class EmailService implements MessageService {
             } else {
                 logger.error("Failed to send email via SendGrid to: {}. Status: {}, Body: {}", 
                     request.getRecipient(), response.getStatusCode(), response.getBody());
+                reportThrottling(response, senderId);
                 
                 return new MessageResponse(
                     false,
                     "Failed to send email via SendGrid: Status " + response.getStatusCode(),
                     null,
                     MessageChannel.EMAIL,
-                    request.getRecipient()
+                    request.getRecipient(),
+                    ProviderErrorClassifier.classifyStatus(response.getStatusCode())
                 );
             }
             
@@ -121,7 +196,8 @@ public class EmailService implements MessageService {
                 "Failed to send email: " + e.getMessage(),
                 null,
                 MessageChannel.EMAIL,
-                request.getRecipient()
+                request.getRecipient(),
+                ProviderErrorClassifier.classify(e)
             );
         } catch (Exception e) {
             logger.error("Unexpected error sending email via SendGrid to: {}", request.getRecipient(), e);
@@ -130,16 +206,158 @@ public class EmailService implements MessageService {
                 "Failed to send email: " + e.getMessage(),
                 null,
                 MessageChannel.EMAIL,
-                request.getRecipient()
+                request.getRecipient(),
+                ProviderErrorClassifier.classify(e)
             );
         }
     }
     
+    // emails with the same subject and body can go out in one call with a personalization per recipient
+    @Override
+    public Object getBatchKey(MessageRequest request) {
+        if (!isValidEmail(request.getRecipient())) {
+            return null;
+        }
+        Content content = resolveContent(request);
+        return List.of(resolveSubject(request), content.getType(), String.valueOf(content.getValue()));
+    }
+    
+    @Override
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+    
+    @Override
+    public List<MessageResponse> sendBatch(List<MessageRequest> requests) {
+        return sendBatch(requests, fromEmail);
+    }
+    
+    @Override
+    public List<MessageResponse> sendBatch(List<MessageRequest> requests, String senderId) {
+        MessageRequest first = requests.get(0);
+        try {
+            logger.info("Sending batch email via SendGrid to {} recipients", requests.size());
+            
+            Mail mail = new Mail();
+            mail.setFrom(new Email(fromEmail, fromName));
+            mail.setSubject(resolveSubject(first));
+            mail.addContent(resolveContent(first));
+            for (MessageRequest request : requests) {
+                Personalization personalization = new Personalization();
+                personalization.addTo(new Email(recipientNormalizer.normalize(MessageChannel.EMAIL, request.getRecipient())));
+                mail.addPersonalization(personalization);
+            }
+            
+            Response response = send(mail, senderId);
+            
+            if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
+                logger.info("Batch email sent successfully via SendGrid to {} recipients with status code: {}", 
+                    requests.size(), response.getStatusCode());
+                
+                // SendGrid gives one message id per mail/send call, it is shared by every recipient of the batch
+                String batchMessageId = response.getHeaders() != null ? response.getHeaders().get(MESSAGE_ID_HEADER) : null;
+                
+                List<MessageResponse> responses = new ArrayList<>(requests.size());
+                for (MessageRequest request : requests) {
+                    responses.add(new MessageResponse(
+                        true,
+                        "Email sent successfully via SendGrid",
+                        batchMessageId != null ? batchMessageId : messageIdGenerator.nextId(GENERATED_ID_PREFIX),
+                        MessageChannel.EMAIL,
+                        request.getRecipient()
+                    ));
+                }
+                return responses;
+            }
+            
+            logger.error("Failed to send batch email via SendGrid to {} recipients. Status: {}, Body: {}", 
+                requests.size(), response.getStatusCode(), response.getBody());
+            reportThrottling(response, senderId);
+            return failedBatch(requests, "Failed to send email via SendGrid: Status " + response.getStatusCode(),
+                ProviderErrorClassifier.classifyStatus(response.getStatusCode()));
+            
+        } catch (Exception e) {
+            logger.error("Error sending batch email via SendGrid to {} recipients", requests.size(), e);
+            return failedBatch(requests, "Failed to send email: " + e.getMessage(), ProviderErrorClassifier.classify(e));
+        }
+    }
+    
+    // SendGrid's own id when it sent one, so the id matches its activity feed and event webhook
+    private String messageId(Response response) {
+        String messageId = response.getHeaders() != null ? response.getHeaders().get(MESSAGE_ID_HEADER) : null;
+        return messageId != null ? messageId : messageIdGenerator.nextId(GENERATED_ID_PREFIX);
+    }
+    
+    private void reportThrottling(Response response, String senderId) {
+        if (response.getStatusCode() == 429) {
+            String retryAfter = response.getHeaders() != null ? response.getHeaders().get("Retry-After") : null;
+            rateLimiterRegistry.onThrottled(MessageChannel.EMAIL, senderId, retryAfter);
+        }
+    }
+    
+    // api() always sends the client's own headers, so additional senders build the full request themselves
+    private Response send(Mail mail, String senderId) throws IOException {
+        Map<String, String> headers = senderHeaders.get(senderId);
+        if (headers == null) {
+            return sendGrid.api(mailSendRequest(mail));
+        }
+        
+        Request sgRequest = new Request();
+        sgRequest.setMethod(Method.POST);
+        sgRequest.setBaseUri(sendGrid.getHost());
+        sgRequest.setEndpoint("/" + sendGrid.getVersion() + "/mail/send");
+        sgRequest.setBody(mail.build());
+        headers.forEach(sgRequest::addHeader);
+        return sendGrid.makeCall(sgRequest);
+    }
+    
+    private List<MessageResponse> failedBatch(List<MessageRequest> requests, String message, FailureType failureType) {
+        List<MessageResponse> responses = new ArrayList<>(requests.size());
+        for (MessageRequest request : requests) {
+            responses.add(new MessageResponse(
+                false,
+                message,
+                null,
+                MessageChannel.EMAIL,
+                request.getRecipient(),
+                failureType
+            ));
+        }
+        return responses;
+    }
+    
+    // package-private so the benchmarks can measure mail building on its own
+    Mail buildMail(MessageRequest request, String recipient) {
+        Email from = new Email(fromEmail, fromName);
+        Email to = new Email(recipient);
+        return new Mail(from, resolveSubject(request), to, resolveContent(request));
+    }
+    
+    // use provided subject or default
+    private String resolveSubject(MessageRequest request) {
+        return StringUtils.hasText(request.getSubject()) 
+            ? request.getSubject() 
+            : "Message from Twilio Messaging Service";
+    }
+    
+    // create content (HTML or plain text)
+    private Content resolveContent(MessageRequest request) {
+        if (StringUtils.hasText(request.getHtmlContent())) {
+            return new Content("text/html", request.getHtmlContent());
+        }
+        return new Content("text/plain", request.getMessage());
+    }
+    
+    Request mailSendRequest(Mail mail) throws IOException {
+        Request sgRequest = new Request();
+        sgRequest.setMethod(Method.POST);
+        sgRequest.setEndpoint("mail/send");
+        sgRequest.setBody(mail.build());
+        return sgRequest;
+    }
+    
     // email validation
-    private boolean isValidEmail(String email) {
-        return StringUtils.hasText(email) && 
-               email.contains("@") && 
-               email.contains(".") && 
-               email.matches("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
+    boolean isValidEmail(String email) {
+        return recipientNormalizer.isValid(MessageChannel.EMAIL, email);
     }
 }
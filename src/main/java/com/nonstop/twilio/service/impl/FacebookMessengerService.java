@@ -1,8 +1,11 @@
 package com.nonstop.twilio.service.impl;
 
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.annotation.PostConstruct;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,11 +14,18 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import com.nonstop.twilio.dto.MessageRequest;
 import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.FailureType;
 import com.nonstop.twilio.enums.MessageChannel;
 import com.nonstop.twilio.service.MessageService;
+import com.nonstop.twilio.service.ProviderErrorClassifier;
+import com.nonstop.twilio.service.RateLimiterRegistry;
+import com.nonstop.twilio.service.RecipientNormalizer;
+
+import reactor.core.publisher.Mono;
 
 @Service
 public class FacebookMessengerService implements MessageService {
@@ -28,53 +38,103 @@ public class FacebookMessengerService implements MessageService {
     @Value("${facebook.api-version}")
     private String apiVersion;
     
+    @Value("${facebook.graph-base-url:https://graph.facebook.com}")
+    private String graphBaseUrl;
+    
+    // only used to key rate limits, the page itself is identified by the access token
+    @Value("${facebook.page-id:me}")
+    private String pageId;
+    
     @Autowired
     private WebClient webClient;
     
+    @Autowired
+    private RateLimiterRegistry rateLimiterRegistry;
+    
+    @Autowired
+    private RecipientNormalizer recipientNormalizer;
+    
+    // the send endpoint never changes, so build it once instead of formatting it per message
+    private URI messagesUri;
+    
+    @PostConstruct
+    public void init() {
+        messagesUri = URI.create(String.format("%s/%s/me/messages", graphBaseUrl, apiVersion));
+    }
+    
     @Override
     public MessageResponse sendMessage(MessageRequest request) {
-        try {
-            String url = String.format("https://graph.facebook.com/%s/me/messages", apiVersion);
-            
-            Map<String, Object> payload = createMessagePayload(request.getRecipient(), request.getMessage());
-            
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = webClient.post()
-                    .uri(url)
-                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                    .bodyValue(payload)
-                    .retrieve()
-                    .bodyToMono(Map.class)
-                    .block();
-            
-            String messageId = response != null ? (String) response.get("message_id") : null;
-            
-            logger.info("Facebook message sent successfully to {}. Message ID: {}", 
-                       request.getRecipient(), messageId);
-            
-            return new MessageResponse(
-                    true, 
-                    "Facebook message sent successfully", 
-                    messageId,
-                    MessageChannel.FACEBOOK,
-                    request.getRecipient()
-            );
-            
-        } catch (Exception e) {
-            logger.error("Failed to send Facebook message to {}: {}", 
-                        request.getRecipient(), e.getMessage());
-            
-            return new MessageResponse(
+        return sendMessageAsync(request).block();
+    }
+    
+    // sends through the WebClient without blocking, errors are turned into a failed response
+    @Override
+    public Mono<MessageResponse> sendMessageAsync(MessageRequest request) {
+        if (!recipientNormalizer.isValid(MessageChannel.FACEBOOK, request.getRecipient())) {
+            logger.error("Invalid Facebook recipient id: {}", request.getRecipient());
+            return Mono.just(new MessageResponse(
                     false, 
-                    "Failed to send Facebook message: " + e.getMessage(), 
+                    "Invalid Facebook recipient id: " + request.getRecipient(), 
                     null,
                     MessageChannel.FACEBOOK,
-                    request.getRecipient()
-            );
+                    request.getRecipient(),
+                    FailureType.INVALID_REQUEST
+            ));
         }
+        
+        return Mono.defer(() -> {
+                    Map<String, Object> payload = createMessagePayload(request.getRecipient(), request.getMessage());
+                    
+                    return webClient.post()
+                            .uri(messagesUri)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .bodyValue(payload)
+                            .retrieve()
+                            .bodyToMono(Map.class);
+                })
+                .map(response -> {
+                    String messageId = (String) response.get("message_id");
+                    
+                    logger.info("Facebook message sent successfully to {}. Message ID: {}", 
+                               request.getRecipient(), messageId);
+                    
+                    return new MessageResponse(
+                            true, 
+                            "Facebook message sent successfully", 
+                            messageId,
+                            MessageChannel.FACEBOOK,
+                            request.getRecipient()
+                    );
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> new MessageResponse(
+                        true, 
+                        "Facebook message sent successfully", 
+                        null,
+                        MessageChannel.FACEBOOK,
+                        request.getRecipient()
+                )))
+                .onErrorResume(e -> {
+                    FailureType failureType = ProviderErrorClassifier.classify(e);
+                    if (failureType == FailureType.RATE_LIMITED && e instanceof WebClientResponseException responseException) {
+                        rateLimiterRegistry.onThrottled(MessageChannel.FACEBOOK, pageId,
+                                responseException.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+                    }
+                    
+                    logger.error("Failed to send Facebook message to {}: {}", 
+                                request.getRecipient(), e.getMessage());
+                    
+                    return Mono.just(new MessageResponse(
+                            false, 
+                            "Failed to send Facebook message: " + e.getMessage(), 
+                            null,
+                            MessageChannel.FACEBOOK,
+                            request.getRecipient(),
+                            failureType
+                    ));
+                });
     }
     
-    private Map<String, Object> createMessagePayload(String recipientId, String messageText) {
+    Map<String, Object> createMessagePayload(String recipientId, String messageText) {
         Map<String, Object> payload = new HashMap<>();
         
         Map<String, String> recipient = new HashMap<>();
@@ -90,6 +150,11 @@ public class FacebookMessengerService implements MessageService {
         return payload;
     }
     
+    @Override
+    public String getSenderId() {
+        return pageId;
+    }
+    
     @Override
     public boolean supports(MessageChannel channel) {
         return MessageChannel.FACEBOOK.equals(channel);
@@ -0,0 +1,116 @@
+package com.nonstop.twilio.service.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.nonstop.twilio.dto.BulkJobStatus;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.BulkJobState;
+import com.nonstop.twilio.service.BulkJobStore;
+
+// keeps jobs on the heap, finished jobs are dropped once they are older than the retention period
+public class InMemoryBulkJobStore implements BulkJobStore {
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private final Duration retention;
+
+    public InMemoryBulkJobStore(Duration retention) {
+        this.retention = retention;
+    }
+
+    @Override
+    public BulkJobStatus create(String jobId, int totalMessages) {
+        evictExpiredJobs();
+
+        Job job = new Job(jobId, totalMessages);
+        jobs.put(jobId, job);
+        return job.toStatus();
+    }
+
+    @Override
+    public void recordResult(String jobId, int index, MessageResponse response) {
+        Job job = jobs.get(jobId);
+        if (job == null || !job.results.compareAndSet(index, null, response)) {
+            return;
+        }
+
+        if (response.success()) {
+            job.successful.incrementAndGet();
+        } else {
+            job.failed.incrementAndGet();
+        }
+        job.completed.incrementAndGet();
+    }
+
+    @Override
+    public void markCompleted(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job != null) {
+            job.finishedAt = Instant.now();
+            job.state = BulkJobState.COMPLETED;
+        }
+    }
+
+    @Override
+    public Optional<BulkJobStatus> findStatus(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::toStatus);
+    }
+
+    @Override
+    public List<MessageResponse> findResults(String jobId, int offset, int limit) {
+        Job job = jobs.get(jobId);
+        if (job == null || offset >= job.results.length()) {
+            return Collections.emptyList();
+        }
+
+        int end = (int) Math.min(job.results.length(), (long) offset + limit);
+        List<MessageResponse> page = new ArrayList<>(end - offset);
+        for (int i = offset; i < end; i++) {
+            page.add(job.results.get(i));
+        }
+        return page;
+    }
+
+    private void evictExpiredJobs() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    private static class Job {
+        private final String jobId;
+        private final Instant createdAt = Instant.now();
+        private final AtomicReferenceArray<MessageResponse> results;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger successful = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile BulkJobState state = BulkJobState.RUNNING;
+        private volatile Instant finishedAt;
+
+        Job(String jobId, int totalMessages) {
+            this.jobId = jobId;
+            this.results = new AtomicReferenceArray<>(totalMessages);
+        }
+
+        BulkJobStatus toStatus() {
+            return new BulkJobStatus(
+                    jobId,
+                    state,
+                    results.length(),
+                    completed.get(),
+                    successful.get(),
+                    failed.get(),
+                    createdAt,
+                    finishedAt
+            );
+        }
+    }
+}
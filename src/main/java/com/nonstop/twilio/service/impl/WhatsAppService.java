@@ -1,63 +1,201 @@
 package com.nonstop.twilio.service.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.nonstop.twilio.dto.MessageRequest;
 import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.DeliveryStatus;
+import com.nonstop.twilio.enums.FailureType;
 import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.DeliveryStatusIndex;
 import com.nonstop.twilio.service.MessageService;
+import com.nonstop.twilio.service.ProviderErrorClassifier;
+import com.nonstop.twilio.service.RateLimiterRegistry;
+import com.nonstop.twilio.service.RecipientNormalizer;
+import com.nonstop.twilio.service.suppression.SuppressionService;
+import com.twilio.exception.ApiException;
+import com.twilio.http.TwilioRestClient;
 import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.rest.api.v2010.account.MessageCreator;
 import com.twilio.type.PhoneNumber;
 
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
 @Service
 public class WhatsAppService implements MessageService {
     
     private static final Logger logger = LoggerFactory.getLogger(WhatsAppService.class);
     
+    private static final String MESSAGING_SERVICE_PREFIX = "MG";
+    
     @Value("${twilio.whatsapp-number}")
     private String fromWhatsAppNumber;
     
+    // more whatsapp: numbers or messaging service sids (MG...) to spread WhatsApp sends over, see SenderRouter
+    @Value("${twilio.whatsapp.additional-senders:}")
+    private String[] additionalSenders;
+    
+    @Value("${twilio.async.enabled:false}")
+    private boolean asyncCreateEnabled;
+    
+    // Twilio posts delivery updates here, see TwilioStatusCallbackService
+    @Value("${twilio.status-callback-url:}")
+    private String statusCallbackUrl;
+    
+    @Autowired
+    private TwilioRestClient twilioRestClient;
+    
+    @Autowired
+    private Scheduler messagingOffloadScheduler;
+    
+    @Autowired
+    private RateLimiterRegistry rateLimiterRegistry;
+    
+    @Autowired
+    private RecipientNormalizer recipientNormalizer;
+    
+    @Autowired
+    private DeliveryStatusIndex deliveryStatusIndex;
+    
+    @Autowired
+    private SuppressionService suppressionService;
+    
+    private List<String> senderIds;
+    
+    @PostConstruct
+    public void init() {
+        List<String> ids = new ArrayList<>();
+        ids.add(fromWhatsAppNumber);
+        for (String sender : additionalSenders) {
+            if (!sender.isBlank() && !ids.contains(sender.trim())) {
+                ids.add(sender.trim());
+            }
+        }
+        senderIds = List.copyOf(ids);
+    }
+    
     @Override
     public MessageResponse sendMessage(MessageRequest request) {
+        return sendMessage(request, fromWhatsAppNumber);
+    }
+    
+    @Override
+    public MessageResponse sendMessage(MessageRequest request, String senderId) {
+        String to = recipientNormalizer.normalize(MessageChannel.WHATSAPP, request.getRecipient());
+        if (to == null) {
+            return invalidRecipient(request);
+        }
+        
         try {
-            String toNumber = request.getRecipient().startsWith("whatsapp:") 
-                    ? request.getRecipient() 
-                    : "whatsapp:" + request.getRecipient();
-            
-            Message message = Message.creator(
-                    new PhoneNumber(toNumber),
-                    new PhoneNumber(fromWhatsAppNumber),
-                    request.getMessage()
-            ).create();
-            
-            logger.info("WhatsApp message sent successfully to {}. SID: {}", 
-                       request.getRecipient(), message.getSid());
-            
-            return new MessageResponse(
-                    true, 
-                    "WhatsApp message sent successfully", 
-                    message.getSid(),
-                    MessageChannel.WHATSAPP,
-                    request.getRecipient()
-            );
-            
+            Message message = creator(request, to, senderId).create(twilioRestClient);
+            return sent(request, message);
         } catch (Exception e) {
-            logger.error("Failed to send WhatsApp message to {}: {}", 
-                        request.getRecipient(), e.getMessage());
-            
-            return new MessageResponse(
-                    false, 
-                    "Failed to send WhatsApp message: " + e.getMessage(), 
-                    null,
-                    MessageChannel.WHATSAPP,
-                    request.getRecipient()
-            );
+            return failed(request, senderId, e);
         }
     }
     
+    @Override
+    public Mono<MessageResponse> sendMessageAsync(MessageRequest request) {
+        return sendMessageAsync(request, fromWhatsAppNumber);
+    }
+    
+    @Override
+    public Mono<MessageResponse> sendMessageAsync(MessageRequest request, String senderId) {
+        if (asyncCreateEnabled) {
+            String to = recipientNormalizer.normalize(MessageChannel.WHATSAPP, request.getRecipient());
+            if (to == null) {
+                return Mono.just(invalidRecipient(request));
+            }
+            return Mono.fromFuture(() -> creator(request, to, senderId).createAsync(twilioRestClient))
+                    .map(message -> sent(request, message))
+                    .onErrorResume(e -> Mono.just(failed(request, senderId, e)));
+        }
+        return Mono.fromCallable(() -> sendMessage(request, senderId))
+                .subscribeOn(messagingOffloadScheduler);
+    }
+    
+    // to is already in whatsapp:+E.164 form
+    private MessageCreator creator(MessageRequest request, String to, String senderId) {
+        // a messaging service picks the number itself
+        MessageCreator creator = senderId.startsWith(MESSAGING_SERVICE_PREFIX)
+                ? Message.creator(new PhoneNumber(to), senderId, request.getMessage())
+                : Message.creator(new PhoneNumber(to), new PhoneNumber(senderId), request.getMessage());
+        if (!statusCallbackUrl.isBlank()) {
+            creator.setStatusCallback(statusCallbackUrl);
+        }
+        return creator;
+    }
+    
+    private MessageResponse sent(MessageRequest request, Message message) {
+        logger.info("WhatsApp message sent successfully to {}. SID: {}", 
+                   request.getRecipient(), message.getSid());
+        deliveryStatusIndex.track(message.getSid(), MessageChannel.WHATSAPP, request.getRecipient(),
+                message.getStatus() != null ? DeliveryStatus.fromTwilio(message.getStatus().toString()) : DeliveryStatus.QUEUED);
+        
+        return new MessageResponse(
+                true, 
+                "WhatsApp message sent successfully", 
+                message.getSid(),
+                MessageChannel.WHATSAPP,
+                request.getRecipient()
+        );
+    }
+    
+    private MessageResponse invalidRecipient(MessageRequest request) {
+        logger.error("Invalid WhatsApp recipient: {}", request.getRecipient());
+        return new MessageResponse(
+                false, 
+                "Invalid phone number, expected E.164 format: " + request.getRecipient(), 
+                null,
+                MessageChannel.WHATSAPP,
+                request.getRecipient(),
+                FailureType.INVALID_REQUEST
+        );
+    }
+    
+    private MessageResponse failed(MessageRequest request, String senderId, Throwable e) {
+        FailureType failureType = ProviderErrorClassifier.classify(e);
+        if (failureType == FailureType.RATE_LIMITED) {
+            rateLimiterRegistry.onThrottled(MessageChannel.WHATSAPP, senderId, null);
+        }
+        // opted out or unreachable numbers are not tried again
+        if (e instanceof ApiException apiException && apiException.getCode() != null) {
+            suppressionService.onTwilioError(MessageChannel.WHATSAPP, request.getRecipient(), apiException.getCode().toString());
+        }
+        
+        logger.error("Failed to send WhatsApp message to {}: {}", 
+                    request.getRecipient(), e.getMessage());
+        
+        return new MessageResponse(
+                false, 
+                "Failed to send WhatsApp message: " + e.getMessage(), 
+                null,
+                MessageChannel.WHATSAPP,
+                request.getRecipient(),
+                failureType
+        );
+    }
+    
+    @Override
+    public String getSenderId() {
+        return fromWhatsAppNumber;
+    }
+    
+    @Override
+    public List<String> getSenderIds() {
+        return senderIds;
+    }
+    
     @Override
     public boolean supports(MessageChannel channel) {
         return MessageChannel.WHATSAPP.equals(channel);
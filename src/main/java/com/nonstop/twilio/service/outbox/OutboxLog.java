@@ -0,0 +1,355 @@
+package com.nonstop.twilio.service.outbox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// append-only log split into segment files. every record is [length][crc32c][type][seq][payload]:
+// APPEND records carry an accepted message, ACK records mark a seq as done. appends are made durable by a
+// single flusher thread that fsyncs whatever was written since its last pass (group commit), so many
+// concurrent writers share one fsync. a segment is deleted once it is the oldest one and all its appends are acked
+public class OutboxLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxLog.class);
+
+    private static final byte APPEND = 1;
+    private static final byte ACK = 2;
+
+    // length + crc, followed by a body of type + seq + payload
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int BODY_HEADER_BYTES = 9;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    private final Object lock = new Object();
+
+    // oldest first, the last one is written to
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    // seq -> segment holding its APPEND, for entries that are not acked yet
+    private final Map<Long, Segment> unacked = new LinkedHashMap<>();
+
+    private long nextSeq;
+    private long nextSegmentId;
+    private List<CompletableFuture<Void>> waitingForSync = new ArrayList<>();
+    private boolean dirty;
+    private volatile boolean closed;
+
+    private Thread flusher;
+
+    public OutboxLog(Path directory, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    // reads the existing segments and returns the appends that were never acked, in seq order
+    public Map<Long, byte[]> open() throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted((a, b) -> Long.compare(segmentId(a), segmentId(b)))
+                    .toList();
+        }
+
+        Map<Long, byte[]> pending = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            Segment segment = Segment.open(files.get(i));
+            segments.addLast(segment);
+            nextSegmentId = segmentId(files.get(i)) + 1;
+            replay(segment, pending, i == files.size() - 1);
+        }
+
+        if (segments.isEmpty()) {
+            segments.addLast(Segment.open(segmentPath(nextSegmentId++)));
+        }
+        deleteAckedSegments();
+
+        flusher = Thread.ofPlatform().daemon().name("outbox-flusher").start(this::flushLoop);
+
+        logger.info("Outbox opened at {} with {} segment(s) and {} unfinished message(s)",
+                directory, segments.size(), pending.size());
+        return pending;
+    }
+
+    // returns the seq numbers once the records are on disk
+    public CompletableFuture<long[]> append(List<byte[]> payloads) {
+        long[] seqs = new long[payloads.size()];
+        CompletableFuture<Void> synced = new CompletableFuture<>();
+
+        synchronized (lock) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Outbox is closed"));
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(payloads.stream()
+                        .mapToInt(payload -> RECORD_HEADER_BYTES + BODY_HEADER_BYTES + payload.length).sum());
+                for (int i = 0; i < payloads.size(); i++) {
+                    seqs[i] = nextSeq++;
+                    encode(buffer, APPEND, seqs[i], payloads.get(i));
+                }
+                buffer.flip();
+
+                Segment segment = write(buffer);
+                for (long seq : seqs) {
+                    unacked.put(seq, segment);
+                    segment.unacked++;
+                }
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            waitingForSync.add(synced);
+            lock.notifyAll();
+        }
+
+        return synced.thenApply(ignored -> seqs);
+    }
+
+    // acks are not waited for: losing one only means the message is sent again after a crash
+    public void ack(long seq) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            Segment segment = unacked.remove(seq);
+            if (segment == null) {
+                return;
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + BODY_HEADER_BYTES);
+                encode(buffer, ACK, seq, new byte[0]);
+                buffer.flip();
+                write(buffer);
+            } catch (IOException e) {
+                logger.error("Failed to write outbox ack for seq {}", seq, e);
+            }
+
+            segment.unacked--;
+            dirty = true;
+            deleteAckedSegments();
+        }
+    }
+
+    public int getUnackedCount() {
+        synchronized (lock) {
+            return unacked.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (lock) {
+            for (Segment segment : segments) {
+                segment.channel.force(false);
+                segment.channel.close();
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<CompletableFuture<Void>> batch;
+            FileChannel channel;
+
+            synchronized (lock) {
+                while (waitingForSync.isEmpty() && !dirty && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (closed && waitingForSync.isEmpty()) {
+                    return;
+                }
+
+                batch = waitingForSync;
+                waitingForSync = new ArrayList<>();
+                dirty = false;
+                channel = segments.getLast().channel;
+            }
+
+            try {
+                channel.force(false);
+                batch.forEach(future -> future.complete(null));
+            } catch (ClosedChannelException e) {
+                // the segment was rolled (and forced) while we were waiting
+                batch.forEach(future -> future.complete(null));
+            } catch (IOException e) {
+                logger.error("Outbox fsync failed", e);
+                batch.forEach(future -> future.completeExceptionally(e));
+            }
+        }
+    }
+
+    // caller holds the lock
+    private Segment write(ByteBuffer buffer) throws IOException {
+        Segment segment = segments.getLast();
+        if (segment.size > 0 && segment.size + buffer.remaining() > segmentBytes) {
+            // everything in the old segment has to be durable before writes move on
+            segment.channel.force(false);
+            segment = Segment.open(segmentPath(nextSegmentId++));
+            segments.addLast(segment);
+        }
+
+        while (buffer.hasRemaining()) {
+            segment.size += segment.channel.write(buffer);
+        }
+        return segment;
+    }
+
+    // caller holds the lock
+    private void deleteAckedSegments() {
+        while (segments.size() > 1 && segments.getFirst().unacked == 0) {
+            Segment segment = segments.removeFirst();
+            try {
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                logger.warn("Failed to delete outbox segment {}", segment.path, e);
+            }
+        }
+    }
+
+    private void replay(Segment segment, Map<Long, byte[]> pending, boolean lastSegment) throws IOException {
+        long size = segment.channel.size();
+        if (size == 0) {
+            return;
+        }
+
+        MappedByteBuffer buffer = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        CRC32C crc = new CRC32C();
+        long validBytes = 0;
+
+        while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < BODY_HEADER_BYTES || length > buffer.remaining()) {
+                break;
+            }
+
+            ByteBuffer body = buffer.slice(buffer.position(), length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            buffer.position(buffer.position() + length);
+            validBytes = buffer.position();
+
+            byte type = body.get();
+            long seq = body.getLong();
+            nextSeq = Math.max(nextSeq, seq + 1);
+            if (type == APPEND) {
+                byte[] payload = new byte[body.remaining()];
+                body.get(payload);
+                pending.put(seq, payload);
+                unacked.put(seq, segment);
+                segment.unacked++;
+            } else if (type == ACK) {
+                Segment owner = unacked.remove(seq);
+                if (owner != null) {
+                    owner.unacked--;
+                    pending.remove(seq);
+                }
+            }
+        }
+
+        if (validBytes < size) {
+            if (lastSegment) {
+                // torn write from a crash, drop the partial record
+                logger.warn("Truncating outbox segment {} from {} to {} bytes", segment.path, size, validBytes);
+                segment.channel.truncate(validBytes);
+            } else {
+                logger.error("Outbox segment {} is corrupt after {} bytes, the rest of it is skipped",
+                        segment.path, validBytes);
+            }
+        }
+        segment.size = validBytes;
+        segment.channel.position(validBytes);
+    }
+
+    private static void encode(ByteBuffer buffer, byte type, long seq, byte[] payload) {
+        int bodyStart = buffer.position() + RECORD_HEADER_BYTES;
+        buffer.putInt(BODY_HEADER_BYTES + payload.length);
+        buffer.putInt(0);
+        buffer.put(type);
+        buffer.putLong(seq);
+        buffer.put(payload);
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), bodyStart, BODY_HEADER_BYTES + payload.length);
+        buffer.putInt(bodyStart - 4, (int) crc.getValue());
+    }
+
+    private Path segmentPath(long segmentId) {
+        return directory.resolve(String.format("%020d%s", segmentId, SEGMENT_SUFFIX));
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private long size;
+        private int unacked;
+
+        private Segment(Path path, FileChannel channel, long size) {
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        static Segment open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            channel.position(size);
+            return new Segment(path, channel, size);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.nonstop.twilio.service.outbox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+
+// write-ahead outbox: requests are on disk before they are sent and acked afterwards, whatever was not acked
+// when the process died is sent again on the next start (at-least-once delivery)
+@Service
+public class OutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxService.class);
+
+    @Value("${messaging.outbox.enabled:false}")
+    private boolean enabled;
+
+    @Value("${messaging.outbox.directory:outbox}")
+    private String directory;
+
+    @Value("${messaging.outbox.segment-size-mb:64}")
+    private long segmentSizeMb;
+
+    // how many recovered messages are re-sent at the same time
+    @Value("${messaging.outbox.replay-concurrency:16}")
+    private int replayConcurrency;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private OutboxLog log;
+
+    private Map<Long, byte[]> recovered = Collections.emptyMap();
+
+    private ExecutorService replayExecutor;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        log = new OutboxLog(Path.of(directory), segmentSizeMb * 1024 * 1024);
+        recovered = log.open();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (replayExecutor != null) {
+            replayExecutor.shutdownNow();
+        }
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // completes with one seq per request once they are all durable
+    public CompletableFuture<long[]> append(List<MessageRequest> requests) {
+        List<byte[]> payloads = new ArrayList<>(requests.size());
+        try {
+            for (MessageRequest request : requests) {
+                payloads.add(objectMapper.writeValueAsBytes(request));
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        }
+        return log.append(payloads);
+    }
+
+    public void ack(long seq) {
+        log.ack(seq);
+    }
+
+    public int getPendingCount() {
+        return log != null ? log.getUnackedCount() : 0;
+    }
+
+    // sends everything left over from the previous run in the background
+    public void replay(Function<MessageRequest, MessageResponse> sender) {
+        if (!enabled || recovered.isEmpty()) {
+            return;
+        }
+
+        Map<Long, byte[]> entries = recovered;
+        recovered = Collections.emptyMap();
+        logger.info("Replaying {} unfinished outbox message(s)", entries.size());
+
+        replayExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        Semaphore permits = new Semaphore(replayConcurrency);
+
+        for (Map.Entry<Long, byte[]> entry : entries.entrySet()) {
+            replayExecutor.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    MessageRequest request = objectMapper.readValue(entry.getValue(), MessageRequest.class);
+                    MessageResponse response = sender.apply(request);
+                    logger.info("Replayed outbox message {} to {}: {}", entry.getKey(), request.getRecipient(),
+                            response.success() ? "sent" : response.message());
+                    ack(entry.getKey());
+                } catch (IOException e) {
+                    // can never be sent, don't keep it around forever
+                    logger.error("Dropping unreadable outbox message {}", entry.getKey(), e);
+                    ack(entry.getKey());
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.nonstop.twilio.service.schedule;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.dto.ScheduledMessage;
+import com.nonstop.twilio.enums.FailureType;
+import com.nonstop.twilio.enums.MessagePriority;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+// holds messages with a sendAt or delayMs until they are due. pending messages sit in a timing wheel, a ticker
+// thread moves the wheel along and puts due messages on a release queue, which is drained at release-rate per
+// second so a batch scheduled for 09:00 goes out over the following seconds instead of all at once.
+// the pending set is written to a snapshot file every snapshot-interval and on shutdown and read back on start,
+// a crash loses at most what was scheduled since the last snapshot
+@Service
+public class ScheduledSendService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScheduledSendService.class);
+
+    @Value("${messaging.scheduled.tick-ms:100}")
+    private long tickMs;
+
+    @Value("${messaging.scheduled.max-pending:5000000}")
+    private int maxPending;
+
+    @Value("${messaging.scheduled.max-delay-days:366}")
+    private long maxDelayDays;
+
+    // messages per second handed to the send path once due
+    @Value("${messaging.scheduled.release-rate:500}")
+    private int releaseRate;
+
+    @Value("${messaging.scheduled.max-in-flight:1000}")
+    private int maxInFlight;
+
+    // empty disables the snapshot
+    @Value("${messaging.scheduled.snapshot-file:scheduled/pending.ndjson}")
+    private String snapshotFile;
+
+    @Value("${messaging.scheduled.snapshot-interval-s:60}")
+    private long snapshotIntervalSeconds;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Object lock = new Object();
+
+    // guarded by lock
+    private TimingWheel<Entry> wheel;
+
+    // everything not handed to the send path yet, including the release queue
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+
+    // only touched by the ticker thread
+    private final Queue<Entry> releaseQueue = new ArrayDeque<>();
+
+    private Semaphore inFlight;
+    private Function<MessageRequest, Mono<MessageResponse>> sender;
+    private Thread ticker;
+    private volatile boolean running;
+
+    private Counter released;
+    private Counter cancelled;
+
+    @PostConstruct
+    public void init() throws IOException {
+        wheel = new TimingWheel<>(tickMs, System.currentTimeMillis());
+        inFlight = new Semaphore(maxInFlight);
+
+        released = meterRegistry.counter("messaging.scheduled.released");
+        cancelled = meterRegistry.counter("messaging.scheduled.cancelled");
+        Gauge.builder("messaging.scheduled.pending", pending, Map::size)
+                .description("Scheduled messages not handed to the send path yet")
+                .register(meterRegistry);
+
+        loadSnapshot();
+    }
+
+    // starts releasing due messages through sender, called once the application is ready
+    public void start(Function<MessageRequest, Mono<MessageResponse>> sender) {
+        this.sender = sender;
+        running = true;
+        ticker = Thread.ofPlatform().daemon().name("scheduled-sends").start(this::tick);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (ticker != null) {
+            ticker.interrupt();
+            ticker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        writeSnapshot();
+    }
+
+    public boolean isScheduled(MessageRequest request) {
+        return request.getSendAt() != null || (request.getDelayMs() != null && request.getDelayMs() > 0);
+    }
+
+    // the response carries the schedule id as messageId, the message itself goes out later
+    public MessageResponse schedule(MessageRequest request) {
+        Instant sendAt = request.getSendAt() != null
+                ? request.getSendAt()
+                : Instant.now().plusMillis(request.getDelayMs());
+        if (sendAt.isAfter(Instant.now().plus(Duration.ofDays(maxDelayDays)))) {
+            return rejected(request, "sendAt is more than " + maxDelayDays + " days ahead", FailureType.INVALID_REQUEST);
+        }
+        if (pending.size() >= maxPending) {
+            return rejected(request, "Too many scheduled messages", FailureType.RATE_LIMITED);
+        }
+
+        // the copy that is sent later, due now and with bulk priority unless the caller chose one
+        MessageRequest toSend = copyForRelease(request);
+        Entry entry = new Entry(UUID.randomUUID().toString(), sendAt, toSend);
+        add(entry);
+
+        logger.info("Scheduled {} message to {} for {} as {}", request.getChannel(), request.getRecipient(), sendAt, entry.id);
+        return new MessageResponse(true, "Scheduled for " + sendAt, entry.id, request.getChannel(), request.getRecipient());
+    }
+
+    public Optional<ScheduledMessage> find(String scheduleId) {
+        Entry entry = pending.get(scheduleId);
+        return entry != null ? Optional.of(new ScheduledMessage(entry.id, entry.sendAt, entry.request)) : Optional.empty();
+    }
+
+    // false when it is unknown or already on its way
+    public boolean cancel(String scheduleId) {
+        Entry entry = pending.remove(scheduleId);
+        if (entry == null) {
+            return false;
+        }
+        // when it already left the wheel for the release queue the ticker skips it, it is no longer pending
+        synchronized (lock) {
+            wheel.cancel(entry.timeout);
+        }
+        cancelled.increment();
+        return true;
+    }
+
+    // both under the lock, so cancel always finds the timeout and the ticker never sees an entry that is not pending
+    private void add(Entry entry) {
+        synchronized (lock) {
+            pending.put(entry.id, entry);
+            entry.timeout = wheel.add(entry, entry.sendAt.toEpochMilli());
+        }
+    }
+
+    private void tick() {
+        long lastSnapshot = System.nanoTime();
+        long lastRefill = System.nanoTime();
+        double budget = 0;
+
+        while (running) {
+            synchronized (lock) {
+                wheel.advance(System.currentTimeMillis(), releaseQueue::add);
+            }
+
+            // token bucket holding at most one second of releases
+            long now = System.nanoTime();
+            budget = Math.min(releaseRate, budget + releaseRate * (now - lastRefill) / 1e9);
+            lastRefill = now;
+            while (budget >= 1 && !releaseQueue.isEmpty() && inFlight.tryAcquire()) {
+                Entry entry = releaseQueue.poll();
+                if (pending.remove(entry.id) == null) {
+                    inFlight.release();
+                    continue;
+                }
+                budget--;
+                release(entry);
+            }
+
+            if (!snapshotFile.isBlank() && now - lastSnapshot > TimeUnit.SECONDS.toNanos(snapshotIntervalSeconds)) {
+                writeSnapshot();
+                lastSnapshot = now;
+            }
+
+            try {
+                Thread.sleep(tickMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void release(Entry entry) {
+        released.increment();
+        sender.apply(entry.request)
+                .doFinally(signal -> inFlight.release())
+                .subscribe(
+                        response -> logger.info("Scheduled message {} to {}: {}", entry.id, entry.request.getRecipient(),
+                                response.success() ? "sent" : response.message()),
+                        e -> logger.error("Scheduled message {} failed", entry.id, e));
+    }
+
+    // one {"id","sendAt","request"} line per pending message, written to a temporary file and moved over the old one
+    private void writeSnapshot() {
+        if (snapshotFile.isBlank()) {
+            return;
+        }
+        Path target = Path.of(snapshotFile);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            int written = 0;
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Entry entry : pending.values()) {
+                    writer.write(objectMapper.writeValueAsString(new ScheduledMessage(entry.id, entry.sendAt, entry.request)));
+                    writer.newLine();
+                    written++;
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Wrote {} scheduled message(s) to {}", written, target);
+        } catch (IOException e) {
+            logger.error("Failed to write the scheduled message snapshot to {}", target, e);
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (snapshotFile.isBlank() || !Files.exists(Path.of(snapshotFile))) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(snapshotFile), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                ScheduledMessage message = objectMapper.readValue(line, ScheduledMessage.class);
+                // messages that came due while we were down are released first, gradually like any other
+                add(new Entry(message.getId(), message.getSendAt(), message.getRequest()));
+            }
+        }
+        logger.info("Loaded {} scheduled message(s) from {}", pending.size(), snapshotFile);
+    }
+
+    private static MessageRequest copyForRelease(MessageRequest request) {
+        MessageRequest copy = new MessageRequest(request.getChannel(), request.getRecipient(), request.getMessage(),
+                request.getSubject(), request.getHtmlContent());
+        copy.setPriority(request.getPriority() != null ? request.getPriority() : MessagePriority.BULK);
+        return copy;
+    }
+
+    private static MessageResponse rejected(MessageRequest request, String message, FailureType failureType) {
+        logger.warn("Rejected scheduled {} message to {}: {}", request.getChannel(), request.getRecipient(), message);
+        return new MessageResponse(false, message, null, request.getChannel(), request.getRecipient(), failureType);
+    }
+
+    private static final class Entry {
+        private final String id;
+        private final Instant sendAt;
+        private final MessageRequest request;
+
+        // guarded by lock
+        private TimingWheel.Timeout<Entry> timeout;
+
+        Entry(String id, Instant sendAt, MessageRequest request) {
+            this.id = id;
+            this.sendAt = sendAt;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.nonstop.twilio.service.schedule;
+
+import java.util.function.Consumer;
+
+// hierarchical timing wheel: four levels of 256 slots, level n slots are 256^n ticks wide. a timeout goes into
+// the lowest level whose current lap also contains its deadline, and moves down a level each time the wheel
+// reaches its slot, so adding and cancelling are O(1) and advancing costs one slot per tick plus the cascades.
+// deadlines further out than the top level sit in an overflow list until the top level wraps.
+// not thread safe, the owner has to lock around it
+public final class TimingWheel<T> {
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private final long tickMillis;
+
+    // slots[level * SLOTS + index]
+    private final Bucket<T>[] slots;
+    private final Bucket<T> overflow = new Bucket<>();
+
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+        this.slots = new Bucket[LEVELS * SLOTS];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Bucket<>();
+        }
+    }
+
+    // deadlines at or before the current tick come out on the next advance
+    public Timeout<T> add(T value, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(value, Math.max(deadlineMillis / tickMillis, currentTick + 1));
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    // false when it already expired or was cancelled
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.bucket == null) {
+            return false;
+        }
+        timeout.bucket.unlink(timeout);
+        size--;
+        return true;
+    }
+
+    // moves the wheel up to nowMillis and hands every timeout that came due to expired, oldest tick first
+    public void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            // top level first, what it cascades may land in a lower slot that is due now as well
+            if ((currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0) {
+                cascade(overflow);
+            }
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(slots[level * SLOTS + index(currentTick, level)]);
+                }
+            }
+
+            Bucket<T> due = slots[index(currentTick, 0)];
+            Timeout<T> timeout;
+            while ((timeout = due.poll()) != null) {
+                size--;
+                expired.accept(timeout.value);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void cascade(Bucket<T> bucket) {
+        Timeout<T> timeout;
+        while ((timeout = bucket.poll()) != null) {
+            place(timeout);
+        }
+    }
+
+    private void place(Timeout<T> timeout) {
+        long deadline = Math.max(timeout.deadlineTick, currentTick);
+        for (int level = 0; level < LEVELS; level++) {
+            // same lap at the next level up, so the slot at this level is still ahead of us
+            if ((deadline ^ currentTick) >>> (SLOT_BITS * (level + 1)) == 0) {
+                slots[level * SLOTS + index(deadline, level)].add(timeout);
+                return;
+            }
+        }
+        overflow.add(timeout);
+    }
+
+    private static int index(long tick, int level) {
+        return (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+    }
+
+    public static final class Timeout<T> {
+        private final T value;
+        private final long deadlineTick;
+
+        // intrusive list links, bucket is null once the timeout is out of the wheel
+        private Bucket<T> bucket;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        private Timeout(T value, long deadlineTick) {
+            this.value = value;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void unlink(Timeout<T> timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        Timeout<T> poll() {
+            Timeout<T> first = head;
+            if (first != null) {
+                unlink(first);
+            }
+            return first;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.nonstop.twilio.service.suppression;
+
+// 128-bit MurmurHash3 (x64 variant) of a recipient. it is computed straight off the string's UTF-16 chars,
+// four to a 64-bit word, so hashing allocates nothing. both halves feed the bloom filter probes and together
+// they are the key of the suppression table
+record Fingerprint(long high, long low) {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    static Fingerprint of(String value) {
+        long h1 = 0;
+        long h2 = 0;
+        int length = value.length();
+        int blocks = length / 8;
+
+        for (int block = 0; block < blocks; block++) {
+            int i = block * 8;
+            long k1 = chars(value, i, 4);
+            long k2 = chars(value, i + 4, 4);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int tail = length - blocks * 8;
+        if (tail > 4) {
+            h2 ^= mixK2(chars(value, blocks * 8 + 4, tail - 4));
+        }
+        if (tail > 0) {
+            h1 ^= mixK1(chars(value, blocks * 8, Math.min(tail, 4)));
+        }
+
+        long bytes = 2L * length;
+        h1 ^= bytes;
+        h2 ^= bytes;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new Fingerprint(h1, h2);
+    }
+
+    // count chars from start as one little-endian word
+    private static long chars(String value, int start, int count) {
+        long word = 0;
+        for (int i = 0; i < count; i++) {
+            word |= (long) value.charAt(start + i) << (16 * i);
+        }
+        return word;
+    }
+
+    private static long mixK1(long k1) {
+        return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    private static long mixK2(long k2) {
+        return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
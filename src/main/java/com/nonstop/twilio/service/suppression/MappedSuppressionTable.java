@@ -0,0 +1,280 @@
+package com.nonstop.twilio.service.suppression;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+// open addressing hash table of recipient fingerprints in a memory mapped file, or in a direct buffer when there
+// is no file. a 64 byte header [magic][version][capacity][size][tombstones] is followed by 24 byte slots
+// [high][low][meta], meta being added-at millis << 16 | reason << 8 | state. lookups take no lock: a writer
+// fills in high and low before it publishes meta with release semantics, and a reader reads meta with acquire
+// semantics before it looks at the rest. linear probing, the table doubles into a new file once live and
+// deleted slots fill half of it, deleted slots stay as tombstones until then.
+// writes land in the page cache straight away, so they survive the process dying, force() is for the machine
+final class MappedSuppressionTable {
+
+    private static final int MAGIC = 0x53555050;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 24;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int TOMBSTONES_OFFSET = 24;
+
+    // keeps every slot offset within an int
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private static final long EMPTY = 0;
+    private static final long LIVE = 1;
+    private static final long DELETED = 2;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path file;
+
+    // swapped whole on resize, readers keep using the mapping they started with
+    private volatile ByteBuffer slots;
+
+    // guarded by this
+    private int capacity;
+    private long size;
+    private long tombstones;
+
+    private MappedSuppressionTable(Path file, ByteBuffer slots) {
+        this.file = file;
+        this.slots = slots;
+        this.capacity = (int) slots.getLong(CAPACITY_OFFSET);
+        this.size = slots.getLong(SIZE_OFFSET);
+        this.tombstones = slots.getLong(TOMBSTONES_OFFSET);
+    }
+
+    static MappedSuppressionTable inMemory(int initialCapacity) {
+        int capacity = capacityFor(initialCapacity);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_BYTES + capacity * SLOT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(buffer, capacity);
+        return new MappedSuppressionTable(null, buffer);
+    }
+
+    static MappedSuppressionTable open(Path file, int initialCapacity) throws IOException {
+        if (Files.exists(file)) {
+            MappedByteBuffer buffer = map(file, Files.size(file));
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a suppression table: " + file);
+            }
+            long capacity = buffer.getLong(CAPACITY_OFFSET);
+            if (Long.bitCount(capacity) != 1 || HEADER_BYTES + capacity * SLOT_BYTES != buffer.capacity()) {
+                throw new IOException("Suppression table " + file + " is truncated or damaged");
+            }
+            return new MappedSuppressionTable(file, buffer);
+        }
+
+        int capacity = capacityFor(initialCapacity);
+        Path created = create(file.resolveSibling(file.getFileName() + ".new"), capacity);
+        Files.move(created, file, StandardCopyOption.ATOMIC_MOVE);
+        return new MappedSuppressionTable(file, map(file, Files.size(file)));
+    }
+
+    // meta of the fingerprint's slot, 0 when it is not in the table
+    long lookup(Fingerprint fingerprint) {
+        ByteBuffer table = slots;
+        int mask = (int) table.getLong(CAPACITY_OFFSET) - 1;
+        for (int i = (int) fingerprint.high() & mask, probed = 0; probed <= mask; i = (i + 1) & mask, probed++) {
+            int offset = HEADER_BYTES + i * SLOT_BYTES;
+            long meta = (long) LONGS.getAcquire(table, offset + 16);
+            long state = meta & 0xff;
+            if (state == EMPTY) {
+                return 0;
+            }
+            if (state == LIVE && table.getLong(offset) == fingerprint.high() && table.getLong(offset + 8) == fingerprint.low()) {
+                return meta;
+            }
+        }
+        return 0;
+    }
+
+    // true when it was not in the table yet, otherwise its meta is replaced
+    synchronized boolean put(Fingerprint fingerprint, long meta) throws IOException {
+        if ((size + tombstones + 1) * 2 > capacity) {
+            resize(size * 4 > capacity ? capacity * 2 : capacity);
+        }
+
+        ByteBuffer table = slots;
+        int mask = capacity - 1;
+        int free = -1;
+        for (int i = (int) fingerprint.high() & mask; ; i = (i + 1) & mask) {
+            int offset = HEADER_BYTES + i * SLOT_BYTES;
+            long state = table.getLong(offset + 16) & 0xff;
+            if (state == LIVE && table.getLong(offset) == fingerprint.high() && table.getLong(offset + 8) == fingerprint.low()) {
+                LONGS.setRelease(table, offset + 16, meta | LIVE);
+                return false;
+            }
+            if (state == DELETED && free < 0) {
+                free = i;
+            }
+            if (state == EMPTY) {
+                if (free < 0) {
+                    free = i;
+                } else {
+                    tombstones--;
+                }
+                break;
+            }
+        }
+
+        int offset = HEADER_BYTES + free * SLOT_BYTES;
+        table.putLong(offset, fingerprint.high());
+        table.putLong(offset + 8, fingerprint.low());
+        LONGS.setRelease(table, offset + 16, meta | LIVE);
+        size++;
+        writeCounts(table);
+        return true;
+    }
+
+    synchronized boolean remove(Fingerprint fingerprint) {
+        ByteBuffer table = slots;
+        int mask = capacity - 1;
+        for (int i = (int) fingerprint.high() & mask, probed = 0; probed <= mask; i = (i + 1) & mask, probed++) {
+            int offset = HEADER_BYTES + i * SLOT_BYTES;
+            long meta = table.getLong(offset + 16);
+            long state = meta & 0xff;
+            if (state == EMPTY) {
+                return false;
+            }
+            if (state == LIVE && table.getLong(offset) == fingerprint.high() && table.getLong(offset + 8) == fingerprint.low()) {
+                LONGS.setRelease(table, offset + 16, (meta & ~0xffL) | DELETED);
+                size--;
+                tombstones++;
+                writeCounts(table);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void forEach(Consumer<Fingerprint> action) {
+        ByteBuffer table = slots;
+        for (int i = 0; i < capacity; i++) {
+            int offset = HEADER_BYTES + i * SLOT_BYTES;
+            if ((table.getLong(offset + 16) & 0xff) == LIVE) {
+                action.accept(new Fingerprint(table.getLong(offset), table.getLong(offset + 8)));
+            }
+        }
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized void force() {
+        if (slots instanceof MappedByteBuffer mapped) {
+            mapped.force();
+        }
+    }
+
+    static long meta(long addedAtMillis, int reason) {
+        return addedAtMillis << 16 | (long) (reason & 0xff) << 8;
+    }
+
+    static long addedAt(long meta) {
+        return meta >>> 16;
+    }
+
+    static int reason(long meta) {
+        return (int) (meta >>> 8) & 0xff;
+    }
+
+    // copies the live slots into a fresh table, tombstones are dropped on the way
+    private void resize(int newCapacity) throws IOException {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IOException("Suppression table is full at " + size + " entries");
+        }
+
+        ByteBuffer resized;
+        Path created = null;
+        if (file == null) {
+            resized = ByteBuffer.allocateDirect(HEADER_BYTES + newCapacity * SLOT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            writeHeader(resized, newCapacity);
+        } else {
+            created = create(file.resolveSibling(file.getFileName() + ".new"), newCapacity);
+            resized = map(created, Files.size(created));
+        }
+
+        ByteBuffer table = slots;
+        int mask = newCapacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            int offset = HEADER_BYTES + i * SLOT_BYTES;
+            long meta = table.getLong(offset + 16);
+            if ((meta & 0xff) != LIVE) {
+                continue;
+            }
+            long high = table.getLong(offset);
+            int slot = (int) high & mask;
+            while ((resized.getLong(HEADER_BYTES + slot * SLOT_BYTES + 16) & 0xff) != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            int target = HEADER_BYTES + slot * SLOT_BYTES;
+            resized.putLong(target, high);
+            resized.putLong(target + 8, table.getLong(offset + 8));
+            resized.putLong(target + 16, meta);
+        }
+        tombstones = 0;
+        writeCounts(resized);
+
+        if (created != null) {
+            ((MappedByteBuffer) resized).force();
+            // the old mapping stays valid for readers still using it, the file under it is just unlinked
+            Files.move(created, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        capacity = newCapacity;
+        slots = resized;
+    }
+
+    private void writeCounts(ByteBuffer table) {
+        table.putLong(SIZE_OFFSET, size);
+        table.putLong(TOMBSTONES_OFFSET, tombstones);
+    }
+
+    private static Path create(Path path, int capacity) throws IOException {
+        Files.deleteIfExists(path);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        MappedByteBuffer buffer = map(path, HEADER_BYTES + (long) capacity * SLOT_BYTES);
+        writeHeader(buffer, capacity);
+        buffer.force();
+        return path;
+    }
+
+    // mapping past the end grows the file, sparsely, the channel can be closed once the mapping exists
+    private static MappedByteBuffer map(Path path, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    private static void writeHeader(ByteBuffer buffer, int capacity) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(CAPACITY_OFFSET, capacity);
+        buffer.putLong(SIZE_OFFSET, 0);
+        buffer.putLong(TOMBSTONES_OFFSET, 0);
+    }
+
+    private static int capacityFor(int requested) {
+        int capacity = Integer.highestOneBit(Math.max(16, Math.min(MAX_CAPACITY, requested)) - 1) << 1;
+        return Math.min(MAX_CAPACITY, capacity);
+    }
+}
@@ -0,0 +1,59 @@
+package com.nonstop.twilio.service.suppression;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// bloom filter over fingerprints, its bit array lives in a direct buffer so millions of recipients cost no heap
+// and nothing for the GC to scan. probe i looks at bit (high + i * low) mod m (double hashing), so all probes
+// come from the one fingerprint. entries cannot be removed, a recipient that was taken off the list stays a
+// false positive until the next start, the table behind the filter has the final say.
+// one writer at a time, readers take no lock and may miss an entry that is being added
+final class OffHeapBloomFilter {
+
+    // a direct buffer holds at most Integer.MAX_VALUE bytes
+    private static final long MAX_BITS = (Integer.MAX_VALUE / Long.BYTES) * 64L;
+
+    private final ByteBuffer words;
+    private final long bitCount;
+    private final int probes;
+
+    OffHeapBloomFilter(long expectedEntries, double falsePositiveRate) {
+        long entries = Math.max(1, expectedEntries);
+        double bitsNeeded = -entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long bits = Math.min(MAX_BITS, Math.max(64, ((long) Math.ceil(bitsNeeded) + 63) / 64 * 64));
+
+        this.bitCount = bits;
+        this.probes = Math.max(1, (int) Math.round((double) bits / entries * Math.log(2)));
+        this.words = ByteBuffer.allocateDirect((int) (bits / 8)).order(ByteOrder.nativeOrder());
+    }
+
+    void put(Fingerprint fingerprint) {
+        for (int i = 0; i < probes; i++) {
+            long bit = bit(fingerprint, i);
+            int offset = (int) (bit >>> 6) * Long.BYTES;
+            words.putLong(offset, words.getLong(offset) | (1L << bit));
+        }
+    }
+
+    boolean mightContain(Fingerprint fingerprint) {
+        for (int i = 0; i < probes; i++) {
+            long bit = bit(fingerprint, i);
+            if ((words.getLong((int) (bit >>> 6) * Long.BYTES) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long sizeInBytes() {
+        return bitCount / 8;
+    }
+
+    int probes() {
+        return probes;
+    }
+
+    private long bit(Fingerprint fingerprint, int i) {
+        return ((fingerprint.high() + i * fingerprint.low()) & Long.MAX_VALUE) % bitCount;
+    }
+}
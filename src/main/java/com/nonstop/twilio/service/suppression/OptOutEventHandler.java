@@ -0,0 +1,54 @@
+package com.nonstop.twilio.service.suppression;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.nonstop.twilio.dto.InboundEvent;
+import com.nonstop.twilio.enums.InboundEventType;
+import com.nonstop.twilio.enums.SuppressionReason;
+import com.nonstop.twilio.service.webhook.InboundEventHandler;
+
+// opt-outs and opt-ins from webhook events: a user writing one of the usual stop or start keywords, or turning
+// recurring notifications off and on. the sender of the event is the recipient we send to. events from a webhook
+// whose signature was not checked are ignored, and an opt-in only lifts an opt-out, never a bounce or a block
+@Component
+public class OptOutEventHandler implements InboundEventHandler {
+
+    // the keywords carriers honour for SMS, users type them elsewhere too
+    private static final Set<String> STOP_KEYWORDS = Set.of("STOP", "STOPALL", "UNSUBSCRIBE", "CANCEL", "END", "QUIT");
+    private static final Set<String> START_KEYWORDS = Set.of("START", "UNSTOP");
+
+    // notification_messages_status of a facebook opt-in event
+    private static final String NOTIFICATIONS_STOPPED = "STOP NOTIFICATIONS";
+    private static final String NOTIFICATIONS_RESUMED = "RESUME NOTIFICATIONS";
+
+    @Autowired
+    private SuppressionService suppressionService;
+
+    @Override
+    public void handle(List<InboundEvent> events) {
+        for (InboundEvent event : events) {
+            if (!event.isVerified() || event.getSenderId() == null || event.getChannel() == null) {
+                continue;
+            }
+            if (event.getType() == InboundEventType.MESSAGE && event.getText() != null && event.getText().length() <= 16) {
+                String keyword = event.getText().trim().toUpperCase(Locale.ROOT);
+                if (STOP_KEYWORDS.contains(keyword)) {
+                    suppressionService.suppress(event.getChannel(), event.getSenderId(), SuppressionReason.OPTED_OUT);
+                } else if (START_KEYWORDS.contains(keyword)) {
+                    suppressionService.unsuppress(event.getChannel(), event.getSenderId(), SuppressionReason.OPTED_OUT);
+                }
+            } else if (event.getType() == InboundEventType.OPTIN) {
+                if (NOTIFICATIONS_STOPPED.equalsIgnoreCase(event.getPayload())) {
+                    suppressionService.suppress(event.getChannel(), event.getSenderId(), SuppressionReason.OPTED_OUT);
+                } else if (NOTIFICATIONS_RESUMED.equalsIgnoreCase(event.getPayload())) {
+                    suppressionService.unsuppress(event.getChannel(), event.getSenderId(), SuppressionReason.OPTED_OUT);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.nonstop.twilio.service.suppression;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nonstop.twilio.dto.SuppressionEntry;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.enums.SuppressionReason;
+import com.nonstop.twilio.service.RecipientNormalizer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// recipients we do not send to: opted out, hard bounced, complained or unreachable. per channel a bloom filter
+// answers most lookups (recipients that were never suppressed) from a few bits, the rest go to an exact table
+// of 128-bit fingerprints of the normalized recipient, memory mapped from directory/<channel>.idx so it
+// survives restarts. the filter is rebuilt from the table on start. blank directory keeps the tables in memory
+@Service
+public class SuppressionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SuppressionService.class);
+
+    // Twilio error codes that mean the recipient will not get anything we send
+    private static final Map<String, SuppressionReason> TWILIO_ERRORS = Map.of(
+            "21610", SuppressionReason.OPTED_OUT,          // replied STOP to the sender
+            "21211", SuppressionReason.INVALID_RECIPIENT,  // not a valid phone number
+            "21614", SuppressionReason.INVALID_RECIPIENT,  // not a mobile number
+            "30005", SuppressionReason.INVALID_RECIPIENT,  // unknown or inactive handset
+            "30006", SuppressionReason.INVALID_RECIPIENT,  // landline or unreachable carrier
+            "63003", SuppressionReason.INVALID_RECIPIENT); // not a WhatsApp user
+
+    @Value("${messaging.suppression.enabled:true}")
+    private boolean enabled;
+
+    @Value("${messaging.suppression.directory:suppression}")
+    private String directory;
+
+    // per channel, sizes the bloom filter, more entries than this only raise its false positive rate
+    @Value("${messaging.suppression.expected-entries:1000000}")
+    private long expectedEntries;
+
+    @Value("${messaging.suppression.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // slots of a new table, it doubles when half full
+    @Value("${messaging.suppression.initial-capacity:65536}")
+    private int initialCapacity;
+
+    @Autowired
+    private RecipientNormalizer recipientNormalizer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<MessageChannel, Index> indexes = new EnumMap<>(MessageChannel.class);
+
+    private final Map<MessageChannel, Counter> hits = new EnumMap<>(MessageChannel.class);
+    private final Map<MessageChannel, Counter> falsePositives = new EnumMap<>(MessageChannel.class);
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        for (MessageChannel channel : MessageChannel.values()) {
+            String channelTag = channel.name().toLowerCase(Locale.ROOT);
+            MappedSuppressionTable table = directory.isBlank()
+                    ? MappedSuppressionTable.inMemory(initialCapacity)
+                    : MappedSuppressionTable.open(Path.of(directory, channelTag + ".idx"), initialCapacity);
+
+            OffHeapBloomFilter filter = new OffHeapBloomFilter(Math.max(expectedEntries, table.size()), falsePositiveRate);
+            table.forEach(filter::put);
+            indexes.put(channel, new Index(filter, table));
+
+            hits.put(channel, meterRegistry.counter("messaging.suppression.hits", "channel", channelTag));
+            falsePositives.put(channel, meterRegistry.counter("messaging.suppression.bloom.false.positives", "channel", channelTag));
+            Gauge.builder("messaging.suppression.entries", table, MappedSuppressionTable::size)
+                    .tag("channel", channelTag)
+                    .register(meterRegistry);
+
+            if (table.size() > 0) {
+                logger.info("Loaded {} suppressed {} recipients, bloom filter of {} KB with {} probes",
+                        table.size(), channel, filter.sizeInBytes() / 1024, filter.probes());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        indexes.values().forEach(index -> index.table.force());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // called for every message before it is sent, takes no lock
+    public boolean isSuppressed(MessageChannel channel, String recipient) {
+        if (!enabled || channel == null || recipient == null) {
+            return false;
+        }
+
+        Index index = indexes.get(channel);
+        Fingerprint fingerprint = Fingerprint.of(keyOf(channel, recipient));
+        if (!index.filter.mightContain(fingerprint)) {
+            return false;
+        }
+        if (index.table.lookup(fingerprint) == 0) {
+            falsePositives.get(channel).increment();
+            return false;
+        }
+        hits.get(channel).increment();
+        return true;
+    }
+
+    public Optional<SuppressionEntry> find(MessageChannel channel, String recipient) {
+        if (!enabled || channel == null || recipient == null) {
+            return Optional.empty();
+        }
+
+        long meta = indexes.get(channel).table.lookup(Fingerprint.of(keyOf(channel, recipient)));
+        if (meta == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new SuppressionEntry(channel, recipient,
+                SuppressionReason.values()[MappedSuppressionTable.reason(meta)],
+                Instant.ofEpochMilli(MappedSuppressionTable.addedAt(meta))));
+    }
+
+    // true when the recipient was not suppressed yet, otherwise its reason is replaced
+    public boolean suppress(MessageChannel channel, String recipient, SuppressionReason reason) {
+        if (!enabled) {
+            return false;
+        }
+
+        Index index = indexes.get(channel);
+        Fingerprint fingerprint = Fingerprint.of(keyOf(channel, recipient));
+        SuppressionReason given = reason != null ? reason : SuppressionReason.MANUAL;
+        boolean added;
+        // the bloom filter takes one writer at a time
+        synchronized (index) {
+            try {
+                added = index.table.put(fingerprint,
+                        MappedSuppressionTable.meta(System.currentTimeMillis(), given.ordinal()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            index.filter.put(fingerprint);
+        }
+        if (added) {
+            logger.info("Suppressed {} recipient {}: {}", channel, recipient, given);
+        }
+        return added;
+    }
+
+    // the recipient stays in the bloom filter until the next start, the table lookup lets it through
+    public boolean unsuppress(MessageChannel channel, String recipient) {
+        if (!enabled) {
+            return false;
+        }
+
+        boolean removed = indexes.get(channel).table.remove(Fingerprint.of(keyOf(channel, recipient)));
+        if (removed) {
+            logger.info("Removed {} recipient {} from the suppression list", channel, recipient);
+        }
+        return removed;
+    }
+
+    // only when the recipient is suppressed for that reason, so an opt-in does not lift a bounce or a complaint
+    public boolean unsuppress(MessageChannel channel, String recipient, SuppressionReason reason) {
+        if (!enabled) {
+            return false;
+        }
+
+        Index index = indexes.get(channel);
+        Fingerprint fingerprint = Fingerprint.of(keyOf(channel, recipient));
+        boolean removed;
+        // under the writer lock, so a suppress for another reason cannot land between the check and the remove
+        synchronized (index) {
+            long meta = index.table.lookup(fingerprint);
+            removed = meta != 0 && MappedSuppressionTable.reason(meta) == reason.ordinal() && index.table.remove(fingerprint);
+        }
+        if (removed) {
+            logger.info("Removed {} recipient {} from the suppression list, it was {}", channel, recipient, reason);
+        }
+        return removed;
+    }
+
+    // error code of a failed send or a status callback, codes that say the recipient is unreachable suppress it
+    public void onTwilioError(MessageChannel channel, String recipient, String errorCode) {
+        if (errorCode == null || recipient == null) {
+            return;
+        }
+        SuppressionReason reason = TWILIO_ERRORS.get(errorCode);
+        if (reason != null) {
+            suppress(channel, recipient, reason);
+        }
+    }
+
+    // the normalized recipient, so +1 555 123 4567 and +15551234567 are one entry. email addresses are
+    // compared without case, recipients that do not normalize are kept as given
+    private String keyOf(MessageChannel channel, String recipient) {
+        String normalized = recipientNormalizer.normalize(channel, recipient);
+        String key = normalized != null ? normalized : recipient.trim();
+        return channel == MessageChannel.EMAIL ? key.toLowerCase(Locale.ROOT) : key;
+    }
+
+    private static final class Index {
+        private final OffHeapBloomFilter filter;
+        private final MappedSuppressionTable table;
+
+        Index(OffHeapBloomFilter filter, MappedSuppressionTable table) {
+            this.filter = filter;
+            this.table = table;
+        }
+    }
+}
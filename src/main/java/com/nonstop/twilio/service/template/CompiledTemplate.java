@@ -0,0 +1,65 @@
+package com.nonstop.twilio.service.template;
+
+import java.util.Map;
+
+import com.nonstop.twilio.dto.MessageTemplate;
+
+// render plans for each part of a template, built once and shared by every request that uses it
+final class CompiledTemplate {
+
+    private final MessageTemplate source;
+    private final RenderPlan message;
+    private final RenderPlan subject;
+    private final RenderPlan htmlContent;
+
+    private CompiledTemplate(MessageTemplate source, RenderPlan message, RenderPlan subject, RenderPlan htmlContent) {
+        this.source = source;
+        this.message = message;
+        this.subject = subject;
+        this.htmlContent = htmlContent;
+    }
+
+    static CompiledTemplate compile(MessageTemplate template) {
+        return new CompiledTemplate(
+                template,
+                RenderPlan.compile(template.getMessage()),
+                template.getSubject() != null ? RenderPlan.compile(template.getSubject()) : null,
+                template.getHtmlContent() != null ? RenderPlan.compile(template.getHtmlContent()) : null
+        );
+    }
+
+    MessageTemplate getSource() {
+        return source;
+    }
+
+    String renderMessage(Map<String, String> variables, StringBuilderPool pool) {
+        return render(message, variables, false, pool);
+    }
+
+    String renderSubject(Map<String, String> variables, StringBuilderPool pool) {
+        return render(subject, variables, false, pool);
+    }
+
+    // variables are escaped, the template's own markup is not
+    String renderHtmlContent(Map<String, String> variables, StringBuilderPool pool) {
+        return render(htmlContent, variables, true, pool);
+    }
+
+    private static String render(RenderPlan plan, Map<String, String> variables, boolean escapeHtml,
+            StringBuilderPool pool) {
+        if (plan == null) {
+            return null;
+        }
+        if (!plan.hasVariables()) {
+            return plan.literal();
+        }
+
+        StringBuilder out = pool.acquire(plan.estimateLength(variables));
+        try {
+            plan.renderTo(out, variables, escapeHtml);
+            return out.toString();
+        } finally {
+            pool.release(out);
+        }
+    }
+}
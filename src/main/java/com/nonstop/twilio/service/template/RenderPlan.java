@@ -0,0 +1,98 @@
+package com.nonstop.twilio.service.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// a template split once into literal text and variable names: literals[0] names[0] literals[1] ... literals[n]
+final class RenderPlan {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    private final String[] literals;
+    private final String[] names;
+    private final int literalLength;
+
+    private RenderPlan(String[] literals, String[] names, int literalLength) {
+        this.literals = literals;
+        this.names = names;
+        this.literalLength = literalLength;
+    }
+
+    static RenderPlan compile(String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int literalLength = 0;
+
+        int from = 0;
+        while (true) {
+            int open = source.indexOf(OPEN, from);
+            int close = open >= 0 ? source.indexOf(CLOSE, open + OPEN.length()) : -1;
+            if (close < 0) {
+                break;
+            }
+
+            String name = source.substring(open + OPEN.length(), close).trim();
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Empty placeholder at position " + open);
+            }
+            literals.add(source.substring(from, open));
+            names.add(name);
+            literalLength += open - from;
+            from = close + CLOSE.length();
+        }
+        literals.add(source.substring(from));
+        literalLength += source.length() - from;
+
+        return new RenderPlan(literals.toArray(new String[0]), names.toArray(new String[0]), literalLength);
+    }
+
+    // a rough size for the output, used to size pooled builders
+    int estimateLength(Map<String, String> variables) {
+        int length = literalLength;
+        for (String name : names) {
+            String value = variables.get(name);
+            length += value != null ? value.length() : 0;
+        }
+        return length;
+    }
+
+    void renderTo(StringBuilder out, Map<String, String> variables, boolean escapeHtml) {
+        out.append(literals[0]);
+        for (int i = 0; i < names.length; i++) {
+            String value = variables.get(names[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing template variable: " + names[i]);
+            }
+            if (escapeHtml) {
+                appendEscaped(out, value);
+            } else {
+                out.append(value);
+            }
+            out.append(literals[i + 1]);
+        }
+    }
+
+    boolean hasVariables() {
+        return names.length > 0;
+    }
+
+    String literal() {
+        return literals[0];
+    }
+
+    private static void appendEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.nonstop.twilio.service.template;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// reuses render buffers across requests. a pool rather than a ThreadLocal because sends run on virtual
+// threads, which would each get (and then throw away) their own buffer
+final class StringBuilderPool {
+
+    private final BlockingQueue<StringBuilder> builders;
+    private final int maxRetainedCapacity;
+
+    StringBuilderPool(int size, int maxRetainedCapacity) {
+        this.builders = new ArrayBlockingQueue<>(size);
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    StringBuilder acquire(int expectedLength) {
+        StringBuilder builder = builders.poll();
+        if (builder == null) {
+            return new StringBuilder(Math.max(64, expectedLength));
+        }
+        builder.ensureCapacity(expectedLength);
+        return builder;
+    }
+
+    // builders that grew past the limit are dropped so one huge message doesn't pin memory
+    void release(StringBuilder builder) {
+        if (builder.capacity() > maxRetainedCapacity) {
+            return;
+        }
+        builder.setLength(0);
+        builders.offer(builder);
+    }
+}
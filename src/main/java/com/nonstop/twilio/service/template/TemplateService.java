@@ -0,0 +1,125 @@
+package com.nonstop.twilio.service.template;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageTemplate;
+
+// registered message templates. each one is compiled into render plans once, the compiled forms are kept in
+// a bounded LRU and rebuilt from the registered source when they fall out of it
+@Service
+public class TemplateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateService.class);
+
+    @Value("${messaging.templates.max-templates:10000}")
+    private int maxTemplates;
+
+    @Value("${messaging.templates.cache-size:1000}")
+    private int cacheSize;
+
+    @Value("${messaging.templates.buffer-pool-size:256}")
+    private int bufferPoolSize;
+
+    // larger render buffers are not returned to the pool
+    @Value("${messaging.templates.max-buffer-chars:65536}")
+    private int maxBufferChars;
+
+    private final Map<String, MessageTemplate> templates = new ConcurrentHashMap<>();
+
+    private Map<String, CompiledTemplate> compiled;
+
+    private StringBuilderPool builderPool;
+
+    @PostConstruct
+    public void init() {
+        compiled = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledTemplate> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        builderPool = new StringBuilderPool(bufferPoolSize, maxBufferChars);
+    }
+
+    // replaces any template with the same id, throws IllegalArgumentException when the template does not parse
+    public MessageTemplate register(MessageTemplate template) {
+        if (template.getId() == null || template.getId().isBlank() || template.getMessage() == null) {
+            throw new IllegalArgumentException("Template id and message are required");
+        }
+        if (templates.size() >= maxTemplates && !templates.containsKey(template.getId())) {
+            throw new IllegalArgumentException("Template limit of " + maxTemplates + " reached");
+        }
+
+        CompiledTemplate compiledTemplate = CompiledTemplate.compile(template);
+        templates.put(template.getId(), template);
+        compiled.put(template.getId(), compiledTemplate);
+
+        logger.info("Registered message template {}", template.getId());
+        return template;
+    }
+
+    public Optional<MessageTemplate> find(String templateId) {
+        return Optional.ofNullable(templates.get(templateId));
+    }
+
+    public boolean remove(String templateId) {
+        compiled.remove(templateId);
+        return templates.remove(templateId) != null;
+    }
+
+    // a copy of the request with the template rendered into it, or the request itself when it has no template.
+    // throws IllegalArgumentException for an unknown template or a missing variable
+    public MessageRequest render(MessageRequest request) {
+        if (request.getTemplateId() == null) {
+            return request;
+        }
+
+        CompiledTemplate template = lookup(request.getTemplateId());
+        Map<String, String> variables = request.getVariables() != null ? request.getVariables() : Map.of();
+
+        MessageRequest rendered = new MessageRequest(
+                request.getChannel(),
+                request.getRecipient(),
+                template.renderMessage(variables, builderPool),
+                orElse(template.renderSubject(variables, builderPool), request.getSubject()),
+                orElse(template.renderHtmlContent(variables, builderPool), request.getHtmlContent())
+        );
+        rendered.setIdempotencyKey(request.getIdempotencyKey());
+        rendered.setPriority(request.getPriority());
+        rendered.setSendAt(request.getSendAt());
+        rendered.setDelayMs(request.getDelayMs());
+        return rendered;
+    }
+
+    // the template's part when it has one, otherwise whatever the request carried, which may be null
+    private static String orElse(String rendered, String fallback) {
+        return rendered != null ? rendered : fallback;
+    }
+
+    private CompiledTemplate lookup(String templateId) {
+        MessageTemplate source = templates.get(templateId);
+        if (source == null) {
+            throw new IllegalArgumentException("Unknown template: " + templateId);
+        }
+
+        // compare the source as well, the template may have been replaced since this was compiled
+        CompiledTemplate template = compiled.get(templateId);
+        if (template == null || template.getSource() != source) {
+            template = CompiledTemplate.compile(source);
+            compiled.put(templateId, template);
+        }
+        return template;
+    }
+}
@@ -0,0 +1,88 @@
+package com.nonstop.twilio.service.webhook;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nonstop.twilio.dto.InboundEvent;
+import com.nonstop.twilio.enums.InboundEventType;
+import com.nonstop.twilio.enums.MessageChannel;
+
+// turns a Messenger webhook body into events:
+//   {"object":"page","entry":[{"id":"<page>","messaging":[{"sender":{"id"},"recipient":{"id"},"timestamp",
+//     "message"|"postback"|"delivery"|"read"|"optin":{...}}]}]}
+// one callback can carry several entries and each entry several events
+class FacebookEventParser {
+
+    private final ObjectMapper objectMapper;
+
+    FacebookEventParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // appends the events in the body to the list, throws when it is not JSON
+    void parse(byte[] body, List<InboundEvent> events) throws IOException {
+        JsonNode root = objectMapper.readTree(body);
+        if (root == null || !"page".equals(root.path("object").asText())) {
+            return;
+        }
+
+        for (JsonNode entry : root.path("entry")) {
+            String pageId = text(entry.path("id"));
+            for (JsonNode messaging : entry.path("messaging")) {
+                events.add(toEvent(pageId, messaging));
+            }
+        }
+    }
+
+    private static InboundEvent toEvent(String pageId, JsonNode messaging) {
+        InboundEvent event = new InboundEvent();
+        event.setChannel(MessageChannel.FACEBOOK);
+        event.setAccountId(pageId);
+        event.setSenderId(text(messaging.path("sender").path("id")));
+        event.setRecipientId(text(messaging.path("recipient").path("id")));
+        event.setTimestamp(messaging.path("timestamp").asLong());
+
+        if (messaging.has("message")) {
+            JsonNode message = messaging.get("message");
+            event.setType(message.path("is_echo").asBoolean() ? InboundEventType.ECHO : InboundEventType.MESSAGE);
+            event.setMessageId(text(message.path("mid")));
+            event.setText(text(message.path("text")));
+            // quick replies come with the text of the button and a payload of our own
+            event.setPayload(text(message.path("quick_reply").path("payload")));
+        } else if (messaging.has("postback")) {
+            JsonNode postback = messaging.get("postback");
+            event.setType(InboundEventType.POSTBACK);
+            event.setMessageId(text(postback.path("mid")));
+            event.setText(text(postback.path("title")));
+            event.setPayload(text(postback.path("payload")));
+        } else if (messaging.has("delivery")) {
+            JsonNode delivery = messaging.get("delivery");
+            event.setType(InboundEventType.DELIVERY);
+            event.setWatermark(delivery.path("watermark").asLong());
+            List<String> messageIds = new ArrayList<>();
+            for (JsonNode mid : delivery.path("mids")) {
+                messageIds.add(mid.asText());
+            }
+            event.setDeliveredMessageIds(messageIds);
+        } else if (messaging.has("read")) {
+            event.setType(InboundEventType.READ);
+            event.setWatermark(messaging.get("read").path("watermark").asLong());
+        } else if (messaging.has("optin")) {
+            JsonNode optin = messaging.get("optin");
+            event.setType(InboundEventType.OPTIN);
+            // STOP_NOTIFICATIONS / RESUME_NOTIFICATIONS for recurring notifications, otherwise the plugin ref
+            String status = text(optin.path("notification_messages_status"));
+            event.setPayload(status != null ? status : text(optin.path("ref")));
+        } else {
+            event.setType(InboundEventType.OTHER);
+        }
+        return event;
+    }
+
+    private static String text(JsonNode node) {
+        return node.isValueNode() && !node.isNull() ? node.asText() : null;
+    }
+}
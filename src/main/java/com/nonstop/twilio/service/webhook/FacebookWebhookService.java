@@ -0,0 +1,256 @@
+package com.nonstop.twilio.service.webhook;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nonstop.twilio.dto.InboundEvent;
+import com.nonstop.twilio.enums.InboundEventType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Messenger webhook intake. the request thread only checks the signature and puts the raw body on a ring
+// buffer, so Meta gets its 200 straight away whatever the handlers cost. worker threads drain the buffer in
+// batches, parse the bodies and pass the events to every InboundEventHandler bean. when the buffer is full
+// the callback is refused and Meta delivers it again later
+@Service
+public class FacebookWebhookService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FacebookWebhookService.class);
+
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    // idle workers back off from spinning to parking up to a millisecond, after that they park until
+    // accept() wakes one
+    private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public enum Result {
+        ACCEPTED,
+        INVALID_SIGNATURE,
+        BUFFER_FULL
+    }
+
+    @Value("${facebook.app-secret:}")
+    private String appSecret;
+
+    @Value("${messaging.webhook.facebook.buffer-size:8192}")
+    private int bufferSize;
+
+    @Value("${messaging.webhook.facebook.workers:2}")
+    private int workerCount;
+
+    @Value("${messaging.webhook.facebook.batch-size:64}")
+    private int batchSize;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private List<InboundEventHandler> handlers = Collections.emptyList();
+
+    private RingBuffer<byte[]> buffer;
+    private FacebookEventParser parser;
+    private ThreadLocal<Mac> macs;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private final Queue<Thread> idleWorkers = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+
+    private Counter accepted;
+    private Counter invalidSignature;
+    private Counter bufferFull;
+    private Counter parseErrors;
+    private Counter handlerErrors;
+    private final Counter[] eventCounters = new Counter[InboundEventType.values().length];
+
+    @PostConstruct
+    public void init() {
+        buffer = new RingBuffer<>(bufferSize);
+        parser = new FacebookEventParser(objectMapper);
+
+        if (appSecret.isBlank()) {
+            logger.warn("facebook.app-secret is not set, webhook signatures are not checked and events are passed on unverified");
+        } else {
+            SecretKeySpec key = new SecretKeySpec(appSecret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+            // Mac instances are not thread safe
+            macs = ThreadLocal.withInitial(() -> {
+                try {
+                    Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                    mac.init(key);
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("HMAC-SHA256 is not available", e);
+                }
+            });
+        }
+
+        accepted = meterRegistry.counter("messaging.webhook.requests", "channel", "facebook", "result", "accepted");
+        invalidSignature = meterRegistry.counter("messaging.webhook.requests", "channel", "facebook", "result", "invalid_signature");
+        bufferFull = meterRegistry.counter("messaging.webhook.requests", "channel", "facebook", "result", "buffer_full");
+        parseErrors = meterRegistry.counter("messaging.webhook.parse.errors", "channel", "facebook");
+        handlerErrors = meterRegistry.counter("messaging.webhook.handler.errors", "channel", "facebook");
+        for (InboundEventType type : InboundEventType.values()) {
+            eventCounters[type.ordinal()] = meterRegistry.counter("messaging.webhook.events",
+                    "channel", "facebook", "type", type.name().toLowerCase());
+        }
+        Gauge.builder("messaging.webhook.queued", buffer, RingBuffer::size)
+                .description("Webhook bodies waiting for a worker")
+                .tag("channel", "facebook")
+                .register(meterRegistry);
+
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(Thread.ofPlatform().daemon().name("facebook-webhook-" + i).start(this::work));
+        }
+        logger.info("Facebook webhook pipeline started with {} worker(s), {} handler(s) and room for {} callbacks",
+                workerCount, handlers.size(), buffer.capacity());
+    }
+
+    // workers finish what is already buffered before they exit
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    public Result accept(byte[] body, String signatureHeader) {
+        if (!isSignatureValid(body, signatureHeader)) {
+            invalidSignature.increment();
+            logger.warn("Rejected Facebook webhook with a missing or invalid signature");
+            return Result.INVALID_SIGNATURE;
+        }
+        if (!buffer.offer(body)) {
+            bufferFull.increment();
+            logger.warn("Facebook webhook buffer is full, refusing the callback");
+            return Result.BUFFER_FULL;
+        }
+        Thread idle = idleWorkers.poll();
+        if (idle != null) {
+            LockSupport.unpark(idle);
+        }
+        accepted.increment();
+        return Result.ACCEPTED;
+    }
+
+    // X-Hub-Signature-256 is sha256=<hex HMAC of the raw body keyed with the app secret>
+    boolean isSignatureValid(byte[] body, String signatureHeader) {
+        if (macs == null) {
+            return true;
+        }
+        if (signatureHeader == null || !signatureHeader.startsWith(SIGNATURE_PREFIX)) {
+            return false;
+        }
+
+        byte[] expected = macs.get().doFinal(body);
+        byte[] received;
+        try {
+            received = HexFormat.of().parseHex(signatureHeader, SIGNATURE_PREFIX.length(), signatureHeader.length());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // constant time, the comparison must not tell how many leading bytes matched
+        return MessageDigest.isEqual(expected, received);
+    }
+
+    private void work() {
+        List<byte[]> bodies = new ArrayList<>(batchSize);
+        List<InboundEvent> events = new ArrayList<>();
+        long idleNanos = MIN_IDLE_NANOS;
+
+        while (true) {
+            if (buffer.drainTo(bodies, batchSize) == 0) {
+                if (!running) {
+                    return;
+                }
+                if (idleNanos < MAX_IDLE_NANOS) {
+                    LockSupport.parkNanos(idleNanos);
+                    idleNanos = Math.min(idleNanos * 2, MAX_IDLE_NANOS);
+                } else {
+                    awaitWork();
+                }
+                continue;
+            }
+            idleNanos = MIN_IDLE_NANOS;
+
+            for (byte[] body : bodies) {
+                try {
+                    parser.parse(body, events);
+                } catch (IOException e) {
+                    parseErrors.increment();
+                    logger.warn("Dropped Facebook webhook body that is not valid JSON: {}", e.getMessage());
+                }
+            }
+            bodies.clear();
+
+            if (!events.isEmpty()) {
+                if (macs != null) {
+                    for (InboundEvent event : events) {
+                        event.setVerified(true);
+                    }
+                }
+                dispatch(List.copyOf(events));
+                events.clear();
+            }
+        }
+    }
+
+    // registers before checking the buffer once more, so a body offered in between either is seen here or
+    // finds this worker to unpark. an unpark that comes before park() makes park() return straight away
+    private void awaitWork() {
+        Thread current = Thread.currentThread();
+        idleWorkers.add(current);
+        if (buffer.size() == 0 && running) {
+            LockSupport.park(this);
+        }
+        idleWorkers.remove(current);
+    }
+
+    private void dispatch(List<InboundEvent> events) {
+        for (InboundEvent event : events) {
+            eventCounters[event.getType().ordinal()].increment();
+        }
+
+        for (InboundEventHandler handler : handlers) {
+            try {
+                handler.handle(events);
+            } catch (RuntimeException e) {
+                handlerErrors.increment();
+                logger.error("Webhook handler {} failed on a batch of {} event(s)",
+                        handler.getClass().getSimpleName(), events.size(), e);
+            }
+        }
+    }
+}
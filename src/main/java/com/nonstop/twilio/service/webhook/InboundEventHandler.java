@@ -0,0 +1,12 @@
+package com.nonstop.twilio.service.webhook;
+
+import java.util.List;
+
+import com.nonstop.twilio.dto.InboundEvent;
+
+// implemented by beans that want webhook events. called from the webhook worker threads with a batch
+// of events in arrival order, a handler that throws does not stop the others from getting the batch
+public interface InboundEventHandler {
+
+    void handle(List<InboundEvent> events);
+}
@@ -0,0 +1,107 @@
+package com.nonstop.twilio.service.webhook;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// bounded multi-producer multi-consumer queue without locks. every slot carries a sequence number that says
+// whether it is free for the producer at that position or holds an element for the consumer at that position,
+// so producers and consumers only compete on their own cursor and never block each other
+public final class RingBuffer<E> {
+
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    // next position to write and to read
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    // rounded up to a power of two
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ring buffer capacity must be between 1 and 2^30");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // false when the buffer is full
+    public boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    // publishes the element to the consumer at this position
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // the slot still holds the element from one lap ago
+                return false;
+            } else {
+                // another producer took this position
+                position = tail.get();
+            }
+        }
+    }
+
+    // null when the buffer is empty
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.set(index, null);
+                    // frees the slot for the producer one lap ahead
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    // moves up to max elements into the list, returns how many
+    public int drainTo(List<? super E> batch, int max) {
+        int drained = 0;
+        while (drained < max) {
+            E element = poll();
+            if (element == null) {
+                break;
+            }
+            batch.add(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    // approximate while producers or consumers are active
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head.get(), capacity()));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
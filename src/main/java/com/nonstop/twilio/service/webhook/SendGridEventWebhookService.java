@@ -0,0 +1,135 @@
+package com.nonstop.twilio.service.webhook;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.enums.SuppressionReason;
+import com.nonstop.twilio.service.suppression.SuppressionService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// SendGrid event webhook, a JSON array of events per request. bounces, spam reports and unsubscribes put the
+// address on the suppression list. group (un)subscribes only cover one unsubscribe group, SendGrid applies those
+// itself, so they are ignored like the other event types. SendGrid signs timestamp + body with ECDSA, the
+// signature and timestamp come in the X-Twilio-Email-Event-Webhook-Signature and -Timestamp headers. without a
+// verification key anyone could post events, so they are acknowledged and nothing is applied
+@Service
+public class SendGridEventWebhookService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SendGridEventWebhookService.class);
+
+    // "blocked" bounces are the receiving server refusing us for now, the address itself is fine
+    private static final String BLOCKED_BOUNCE = "blocked";
+
+    // the base64 public key from the event webhook settings
+    @Value("${sendgrid.event-webhook.public-key:}")
+    private String publicKey;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SuppressionService suppressionService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private PublicKey verificationKey;
+
+    private Counter accepted;
+    private Counter unverified;
+    private Counter invalidSignature;
+    private Counter parseErrors;
+
+    @PostConstruct
+    public void init() throws GeneralSecurityException {
+        if (publicKey.isBlank()) {
+            logger.warn("sendgrid.event-webhook.public-key is not set, event webhooks are not applied to the suppression list");
+        } else {
+            verificationKey = KeyFactory.getInstance("EC")
+                    .generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(publicKey.trim())));
+        }
+
+        accepted = meterRegistry.counter("messaging.webhook.requests", "channel", "sendgrid", "result", "accepted");
+        unverified = meterRegistry.counter("messaging.webhook.requests", "channel", "sendgrid", "result", "unverified");
+        invalidSignature = meterRegistry.counter("messaging.webhook.requests", "channel", "sendgrid", "result", "invalid_signature");
+        parseErrors = meterRegistry.counter("messaging.webhook.parse.errors", "channel", "sendgrid");
+    }
+
+    // false when the signature does not match, nothing is applied then
+    public boolean handle(byte[] body, String signature, String timestamp) {
+        if (verificationKey == null) {
+            // acknowledged so SendGrid does not keep retrying
+            unverified.increment();
+            return true;
+        }
+        if (!verify(body, signature, timestamp)) {
+            invalidSignature.increment();
+            logger.warn("Rejected SendGrid event webhook with a missing or invalid signature");
+            return false;
+        }
+
+        JsonNode events;
+        try {
+            events = objectMapper.readTree(body);
+        } catch (IOException e) {
+            // a retry would not parse either
+            parseErrors.increment();
+            logger.warn("Ignoring unparseable SendGrid event webhook body: {}", e.getMessage());
+            return true;
+        }
+
+        for (JsonNode event : events) {
+            String email = event.path("email").asText(null);
+            if (email == null) {
+                continue;
+            }
+            switch (event.path("event").asText("")) {
+                case "bounce" -> {
+                    if (!BLOCKED_BOUNCE.equals(event.path("type").asText())) {
+                        suppressionService.suppress(MessageChannel.EMAIL, email, SuppressionReason.HARD_BOUNCE);
+                    }
+                }
+                case "spamreport" -> suppressionService.suppress(MessageChannel.EMAIL, email, SuppressionReason.SPAM_COMPLAINT);
+                case "unsubscribe" -> suppressionService.suppress(MessageChannel.EMAIL, email, SuppressionReason.OPTED_OUT);
+                default -> {
+                }
+            }
+        }
+        accepted.increment();
+        return true;
+    }
+
+    private boolean verify(byte[] body, String signature, String timestamp) {
+        if (signature == null || timestamp == null) {
+            return false;
+        }
+        try {
+            Signature verifier = Signature.getInstance("SHA256withECDSA");
+            verifier.initVerify(verificationKey);
+            verifier.update(timestamp.getBytes(StandardCharsets.UTF_8));
+            verifier.update(body);
+            return verifier.verify(Base64.getDecoder().decode(signature));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
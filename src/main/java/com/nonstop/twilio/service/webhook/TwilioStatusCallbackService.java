@@ -0,0 +1,84 @@
+package com.nonstop.twilio.service.webhook;
+
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nonstop.twilio.enums.DeliveryStatus;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.DeliveryStatusIndex;
+import com.nonstop.twilio.service.suppression.SuppressionService;
+import com.twilio.security.RequestValidator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// message status callbacks for SMS and WhatsApp. Twilio posts the form fields MessageSid, MessageStatus,
+// ErrorCode, To and From to the StatusCallback url given when the message was created
+@Service
+public class TwilioStatusCallbackService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwilioStatusCallbackService.class);
+
+    private static final String WHATSAPP_PREFIX = "whatsapp:";
+
+    @Value("${twilio.auth-token}")
+    private String authToken;
+
+    // the public url Twilio calls, the signature is computed over it so it has to match exactly
+    @Value("${twilio.status-callback-url:}")
+    private String statusCallbackUrl;
+
+    @Value("${twilio.status-callback.validate-signature:true}")
+    private boolean validateSignature;
+
+    @Autowired
+    private DeliveryStatusIndex deliveryStatusIndex;
+
+    @Autowired
+    private SuppressionService suppressionService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private RequestValidator requestValidator;
+
+    private Counter accepted;
+    private Counter invalidSignature;
+
+    @PostConstruct
+    public void init() {
+        requestValidator = new RequestValidator(authToken);
+        accepted = meterRegistry.counter("messaging.webhook.requests", "channel", "twilio", "result", "accepted");
+        invalidSignature = meterRegistry.counter("messaging.webhook.requests", "channel", "twilio", "result", "invalid_signature");
+    }
+
+    // false when the X-Twilio-Signature does not match, the index is left alone then
+    public boolean handle(Map<String, String> params, String signature, String requestUrl) {
+        if (validateSignature) {
+            // behind a proxy the url we see is not the one Twilio signed
+            String signedUrl = statusCallbackUrl.isBlank() ? requestUrl : statusCallbackUrl;
+            if (signature == null || !requestValidator.validate(signedUrl, params, signature)) {
+                invalidSignature.increment();
+                logger.warn("Rejected Twilio status callback with a missing or invalid signature");
+                return false;
+            }
+        }
+
+        String to = params.get("To");
+        MessageChannel channel = to != null && to.startsWith(WHATSAPP_PREFIX) ? MessageChannel.WHATSAPP : MessageChannel.SMS;
+        DeliveryStatus status = DeliveryStatus.fromTwilio(params.get("MessageStatus"));
+
+        deliveryStatusIndex.update(params.get("MessageSid"), channel, to, status, params.get("ErrorCode"));
+        // undelivered because the recipient opted out or cannot receive messages
+        suppressionService.onTwilioError(channel, to, params.get("ErrorCode"));
+        accepted.increment();
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+package com.nonstop.twilio.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.impl.InMemoryBulkJobStore;
+
+class BulkJobServiceTests {
+
+	@Test
+	void pagesPastTheEndAreEmpty() {
+		InMemoryBulkJobStore store = new InMemoryBulkJobStore(Duration.ofHours(1));
+		store.create("job", 3);
+		for (int i = 0; i < 3; i++) {
+			store.recordResult("job", i, new MessageResponse(true, "sent", "SM" + i, MessageChannel.SMS, "+1555000" + i));
+		}
+
+		BulkJobService service = new BulkJobService();
+		ReflectionTestUtils.setField(service, "bulkJobStore", store);
+
+		List<MessageResponse> second = service.getResults("job", 1, 2);
+		assertEquals(1, second.size());
+		assertEquals("SM2", second.get(0).messageId());
+		assertTrue(service.getResults("job", 2, 2).isEmpty());
+
+		// page * size overflows an int
+		assertTrue(service.getResults("job", 2_147_484, 1_000).isEmpty());
+		assertTrue(service.getResults("job", Integer.MAX_VALUE, 1_000).isEmpty());
+		assertEquals(1, store.findResults("job", 2, Integer.MAX_VALUE).size());
+	}
+}
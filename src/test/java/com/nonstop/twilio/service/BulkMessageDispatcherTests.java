@@ -0,0 +1,130 @@
+package com.nonstop.twilio.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.MessageChannel;
+
+class BulkMessageDispatcherTests {
+
+	private BulkMessageDispatcher dispatcher;
+
+	@BeforeEach
+	void setUp() {
+		dispatcher = new BulkMessageDispatcher();
+		ReflectionTestUtils.setField(dispatcher, "maxConcurrencyPerChannel", 4);
+		ReflectionTestUtils.setField(dispatcher, "defaultTimeoutMs", 10_000L);
+		dispatcher.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		dispatcher.shutdown();
+	}
+
+	@Test
+	void keepsInputOrderAndRespectsChannelLimit() {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+
+		List<MessageRequest> requests = new ArrayList<>();
+		List<int[]> groups = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			requests.add(new MessageRequest(MessageChannel.SMS, "+1555000" + i, "hi", null, null));
+		}
+		// pairs taken from both ends, so results have to be put back by index
+		for (int i = 0; i < 20; i += 2) {
+			groups.add(new int[] { i, 39 - i });
+			groups.add(new int[] { i + 1 });
+			groups.add(new int[] { 38 - i });
+		}
+
+		List<MessageResponse> responses = dispatcher.dispatchGroups(requests, groups, group -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			sleep(5);
+			inFlight.decrementAndGet();
+			return group.stream().map(BulkMessageDispatcherTests::sent).toList();
+		}, dispatcher.getDefaultTimeout());
+
+		assertEquals(requests.size(), responses.size());
+		for (int i = 0; i < requests.size(); i++) {
+			assertEquals(requests.get(i).getRecipient(), responses.get(i).recipient());
+		}
+		assertTrue(maxInFlight.get() <= 4);
+	}
+
+	@Test
+	void failsMessagesStillPendingAtDeadline() {
+		List<MessageRequest> requests = List.of(
+				new MessageRequest(MessageChannel.EMAIL, "fast@example.com", "hi", null, null),
+				new MessageRequest(MessageChannel.EMAIL, "slow@example.com", "hi", null, null),
+				new MessageRequest(MessageChannel.EMAIL, "slow2@example.com", "hi", null, null));
+
+		List<MessageResponse> responses = dispatcher.dispatchGroups(requests, List.of(new int[] { 0 }, new int[] { 1, 2 }),
+				group -> {
+					if (group.get(0).getRecipient().startsWith("slow")) {
+						sleep(2_000);
+					}
+					return group.stream().map(BulkMessageDispatcherTests::sent).toList();
+				}, Duration.ofMillis(200));
+
+		assertTrue(responses.get(0).success());
+		assertFalse(responses.get(1).success());
+		assertFalse(responses.get(2).success());
+	}
+
+	@Test
+	void reportsEachResultByIndexInTheBackground() {
+		List<MessageRequest> requests = List.of(
+				new MessageRequest(MessageChannel.EMAIL, "a@example.com", "hi", null, null),
+				new MessageRequest(MessageChannel.EMAIL, "b@example.com", "hi", null, null),
+				new MessageRequest(MessageChannel.SMS, "+15550001", "hi", null, null),
+				new MessageRequest(MessageChannel.SMS, "+15550002", "hi", null, null));
+		Function<List<MessageRequest>, List<MessageResponse>> sender = group -> {
+			if (group.get(0).getRecipient().equals("+15550002")) {
+				throw new IllegalStateException("provider down");
+			}
+			return group.stream().map(BulkMessageDispatcherTests::sent).toList();
+		};
+
+		Map<Integer, MessageResponse> results = new ConcurrentHashMap<>();
+		dispatcher.dispatchGroupsAsync(requests, List.of(new int[] { 1, 0 }, new int[] { 2 }, new int[] { 3 }), sender,
+				results::put).join();
+
+		assertEquals(4, results.size());
+		for (int i = 0; i < 3; i++) {
+			assertTrue(results.get(i).success());
+			assertEquals(requests.get(i).getRecipient(), results.get(i).recipient());
+		}
+		assertFalse(results.get(3).success());
+		assertEquals("+15550002", results.get(3).recipient());
+	}
+
+	private static MessageResponse sent(MessageRequest request) {
+		return new MessageResponse(true, "ok", request.getRecipient(), request.getChannel(), request.getRecipient());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
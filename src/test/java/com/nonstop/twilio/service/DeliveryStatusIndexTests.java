@@ -0,0 +1,118 @@
+package com.nonstop.twilio.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nonstop.twilio.dto.MessageDeliveryStatus;
+import com.nonstop.twilio.enums.DeliveryStatus;
+import com.nonstop.twilio.enums.MessageChannel;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DeliveryStatusIndexTests {
+
+	private DeliveryStatusIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new DeliveryStatusIndex();
+		ReflectionTestUtils.setField(index, "maxEntries", 3);
+		ReflectionTestUtils.setField(index, "maxTransitions", 4);
+		ReflectionTestUtils.setField(index, "meterRegistry", new SimpleMeterRegistry());
+		index.init();
+	}
+
+	@Test
+	void aLateCallbackDoesNotMoveTheStatusBack() {
+		index.track("SM1", MessageChannel.SMS, "+15551234567", DeliveryStatus.QUEUED);
+		index.update("SM1", MessageChannel.SMS, "+15551234567", DeliveryStatus.DELIVERED, null);
+		index.update("SM1", MessageChannel.SMS, "+15551234567", DeliveryStatus.SENT, null);
+
+		MessageDeliveryStatus status = index.find("SM1").orElseThrow();
+		assertEquals(DeliveryStatus.DELIVERED, status.getStatus());
+		// the timeline still shows what arrived, in arrival order
+		assertEquals(List.of(DeliveryStatus.QUEUED, DeliveryStatus.DELIVERED, DeliveryStatus.SENT), statuses(status));
+
+		// a callback that beats the send response creates the entry, the send fills in nothing it overrides
+		index.update("SM2", MessageChannel.WHATSAPP, "whatsapp:+15551234567", DeliveryStatus.SENT, null);
+		index.track("SM2", MessageChannel.WHATSAPP, "+15551234567", DeliveryStatus.QUEUED);
+		MessageDeliveryStatus early = index.find("SM2").orElseThrow();
+		assertEquals(DeliveryStatus.SENT, early.getStatus());
+		assertEquals("whatsapp:+15551234567", early.getRecipient());
+	}
+
+	@Test
+	void keepsOnlyTheLastTransitions() {
+		index.track("SM1", MessageChannel.SMS, "+15551234567", DeliveryStatus.ACCEPTED);
+		index.update("SM1", MessageChannel.SMS, "+15551234567", DeliveryStatus.QUEUED, null);
+		index.update("SM1", MessageChannel.SMS, "+15551234567", DeliveryStatus.SENDING, null);
+		index.update("SM1", MessageChannel.SMS, "+15551234567", DeliveryStatus.SENT, null);
+		index.update("SM1", MessageChannel.SMS, "+15551234567", DeliveryStatus.UNDELIVERED, "30006");
+
+		MessageDeliveryStatus status = index.find("SM1").orElseThrow();
+		assertEquals(DeliveryStatus.UNDELIVERED, status.getStatus());
+		assertEquals("30006", status.getErrorCode());
+		assertEquals(List.of(DeliveryStatus.QUEUED, DeliveryStatus.SENDING, DeliveryStatus.SENT, DeliveryStatus.UNDELIVERED),
+				statuses(status));
+	}
+
+	@Test
+	void evictsTheOldestEntriesFromBothIndexes() {
+		index.track("SM1", MessageChannel.SMS, "+15550000001", DeliveryStatus.QUEUED);
+		index.track("SM2", MessageChannel.SMS, "+15550000002", DeliveryStatus.QUEUED);
+		index.assignJob("SM1", "job-1");
+		index.assignJob("SM2", "job-2");
+		index.track("SM3", MessageChannel.SMS, "+15550000003", DeliveryStatus.QUEUED);
+		index.assignJob("SM3", "job-2");
+
+		// updating SM1 does not make it any younger
+		index.update("SM1", MessageChannel.SMS, "+15550000001", DeliveryStatus.SENT, null);
+		index.track("SM4", MessageChannel.SMS, "+15550000004", DeliveryStatus.QUEUED);
+
+		assertTrue(index.find("SM1").isEmpty());
+		assertTrue(index.findByJob("job-1").isEmpty());
+		assertEquals(2, index.findByJob("job-2").size());
+
+		index.track("SM5", MessageChannel.SMS, "+15550000005", DeliveryStatus.QUEUED);
+		assertTrue(index.find("SM2").isEmpty());
+		List<MessageDeliveryStatus> remaining = index.findByJob("job-2");
+		assertEquals(1, remaining.size());
+		assertEquals("SM3", remaining.get(0).getMessageId());
+		assertEquals("job-2", remaining.get(0).getJobId());
+	}
+
+	@Test
+	void jobsOnlyHoldEntriesThatAreStillIndexed() {
+		index.track("SM1", MessageChannel.SMS, "+15550000001", DeliveryStatus.QUEUED);
+		index.assignJob("SM1", "job-1");
+		index.assignJob("SM1", "job-2");
+		assertTrue(index.findByJob("job-1").isEmpty());
+		assertEquals("job-2", index.findByJob("job-2").get(0).getJobId());
+
+		// many assignments racing the evictions of a full index, whatever is left in a job is still indexed
+		ReflectionTestUtils.setField(index, "maxEntries", 64);
+		Thread tracker = Thread.ofPlatform().start(() -> {
+			for (int i = 0; i < 20_000; i++) {
+				index.track("SM" + i, MessageChannel.SMS, "+15550000001", DeliveryStatus.QUEUED);
+			}
+		});
+		while (tracker.isAlive()) {
+			for (int i = 0; i < 20_000; i += 7) {
+				index.assignJob("SM" + i, "job-3");
+			}
+		}
+		for (MessageDeliveryStatus status : index.findByJob("job-3")) {
+			assertTrue(index.find(status.getMessageId()).isPresent(), status.getMessageId());
+		}
+	}
+
+	private static List<DeliveryStatus> statuses(MessageDeliveryStatus status) {
+		return status.getTimeline().stream().map(MessageDeliveryStatus.Transition::getStatus).toList();
+	}
+}
@@ -0,0 +1,80 @@
+package com.nonstop.twilio.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class MessageIdGeneratorTests {
+
+	private MessageIdGenerator generator(int node) {
+		MessageIdGenerator generator = new MessageIdGenerator();
+		ReflectionTestUtils.setField(generator, "node", node);
+		generator.init();
+		return generator;
+	}
+
+	@Test
+	void idsAreUniqueAndIncreaseAcrossThreads() throws InterruptedException {
+		MessageIdGenerator generator = generator(7);
+		Set<Long> ids = ConcurrentHashMap.newKeySet();
+		AtomicBoolean outOfOrder = new AtomicBoolean();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		// far more than 4096 per millisecond, so the sequence keeps borrowing from the next millisecond
+		for (int t = 0; t < 8; t++) {
+			threads.add(Thread.ofPlatform().start(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				long previous = -1;
+				for (int i = 0; i < 50_000; i++) {
+					long id = generator.nextId();
+					if (id <= previous) {
+						outOfOrder.set(true);
+					}
+					previous = id;
+					ids.add(id);
+				}
+			}));
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(outOfOrder.get());
+		assertEquals(400_000, ids.size());
+	}
+
+	@Test
+	void fallsBackToNodeZeroOnlyWhenUnset() {
+		long id = generator(-1).nextId();
+		assertEquals(0, (id >>> 12) & 1023);
+
+		assertThrows(IllegalStateException.class, () -> generator(-2));
+		assertThrows(IllegalStateException.class, () -> generator(1024));
+	}
+
+	@Test
+	void printedIdsSortInCreationOrder() {
+		MessageIdGenerator generator = generator(1023);
+		String first = generator.nextId("SG_");
+		String second = generator.nextId("SG_");
+
+		assertEquals(19, first.length());
+		assertTrue(first.startsWith("SG_"));
+		assertTrue(first.compareTo(second) < 0);
+	}
+}
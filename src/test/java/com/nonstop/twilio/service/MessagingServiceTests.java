@@ -0,0 +1,53 @@
+package com.nonstop.twilio.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.dto.MessageTemplate;
+import com.nonstop.twilio.dto.ScheduledMessage;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.schedule.ScheduledSendService;
+import com.nonstop.twilio.service.template.TemplateService;
+
+@SpringBootTest(properties = "messaging.scheduled.snapshot-file=")
+class MessagingServiceTests {
+
+	@Autowired
+	private MessagingService messagingService;
+
+	@Autowired
+	private TemplateService templateService;
+
+	@Autowired
+	private ScheduledSendService scheduledSendService;
+
+	@Test
+	void templatedRequestWithSendAtIsScheduled() {
+		templateService.register(new MessageTemplate("reminder", "Hi {{name}}, see you at {{time}}", null, null));
+
+		Instant sendAt = Instant.now().plus(1, ChronoUnit.DAYS);
+		MessageRequest request = new MessageRequest(MessageChannel.SMS, "+15551234567", null, null, null);
+		request.setTemplateId("reminder");
+		request.setVariables(Map.of("name", "Ann", "time", "10:00"));
+		request.setSendAt(sendAt);
+
+		MessageResponse response = messagingService.sendMessage(request);
+
+		assertTrue(response.success());
+		assertEquals("Scheduled for " + sendAt, response.message());
+		ScheduledMessage scheduled = scheduledSendService.find(response.messageId()).orElseThrow();
+		assertEquals(sendAt, scheduled.getSendAt());
+		assertEquals("Hi Ann, see you at 10:00", scheduled.getRequest().getMessage());
+		assertTrue(scheduledSendService.cancel(response.messageId()));
+	}
+}
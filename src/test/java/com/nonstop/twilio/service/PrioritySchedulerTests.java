@@ -0,0 +1,81 @@
+package com.nonstop.twilio.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.enums.MessagePriority;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PrioritySchedulerTests {
+
+	@Test
+	void sharesPermitsByWeightWhileLanesAreBusy() {
+		PriorityScheduler scheduler = scheduler(60_000);
+		PriorityScheduler.Permit held = scheduler.acquire(MessageChannel.SMS, MessagePriority.BULK).join();
+
+		List<MessagePriority> order = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			for (MessagePriority priority : MessagePriority.values()) {
+				scheduler.acquire(MessageChannel.SMS, priority).thenAccept(permit -> {
+					order.add(priority);
+					permit.close();
+				});
+			}
+		}
+		assertEquals(60, scheduler.getQueuedCount(MessageChannel.SMS));
+
+		// with one permit, 28 grants are 4 rounds of 4:2:1, give or take the turn bulk used for the held permit
+		held.close();
+		List<MessagePriority> firstRounds = order.subList(0, 28);
+		assertAbout(16, firstRounds.stream().filter(MessagePriority.TRANSACTIONAL::equals).count());
+		assertAbout(8, firstRounds.stream().filter(MessagePriority.NORMAL::equals).count());
+		assertAbout(4, firstRounds.stream().filter(MessagePriority.BULK::equals).count());
+		assertEquals(60, order.size());
+		assertEquals(0, scheduler.getQueuedCount(MessageChannel.SMS));
+	}
+
+	@Test
+	void servesOverdueSendsFirstAndSkipsCancelledOnes() throws InterruptedException {
+		PriorityScheduler scheduler = scheduler(20);
+		PriorityScheduler.Permit held = scheduler.acquire(MessageChannel.EMAIL, MessagePriority.NORMAL).join();
+
+		CompletableFuture<PriorityScheduler.Permit> cancelled = scheduler.acquire(MessageChannel.EMAIL, MessagePriority.TRANSACTIONAL);
+		CompletableFuture<PriorityScheduler.Permit> bulk = scheduler.acquire(MessageChannel.EMAIL, MessagePriority.BULK);
+		Thread.sleep(50);
+		CompletableFuture<PriorityScheduler.Permit> transactional = scheduler.acquire(MessageChannel.EMAIL, MessagePriority.TRANSACTIONAL);
+		cancelled.cancel(false);
+
+		held.close();
+		assertTrue(bulk.isDone());
+		assertFalse(transactional.isDone());
+
+		bulk.join().close();
+		assertTrue(transactional.isDone());
+	}
+
+	private static void assertAbout(long expected, long actual) {
+		assertTrue(Math.abs(expected - actual) <= 1, "expected about " + expected + " but was " + actual);
+	}
+
+	private static PriorityScheduler scheduler(long maxWaitMs) {
+		PriorityScheduler scheduler = new PriorityScheduler();
+		ReflectionTestUtils.setField(scheduler, "maxConcurrencyPerChannel", 1);
+		ReflectionTestUtils.setField(scheduler, "transactionalWeight", 4);
+		ReflectionTestUtils.setField(scheduler, "normalWeight", 2);
+		ReflectionTestUtils.setField(scheduler, "bulkWeight", 1);
+		ReflectionTestUtils.setField(scheduler, "maxWaitMs", maxWaitMs);
+		ReflectionTestUtils.setField(scheduler, "meterRegistry", new SimpleMeterRegistry());
+		scheduler.init();
+		return scheduler;
+	}
+}
@@ -0,0 +1,117 @@
+package com.nonstop.twilio.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.FailureType;
+import com.nonstop.twilio.enums.MessageChannel;
+
+import reactor.core.publisher.Mono;
+
+class ProviderResilienceTests {
+
+	private static final long OPEN_DURATION_MS = 50;
+
+	private final MessageRequest request = new MessageRequest(MessageChannel.SMS, "+15551234567", "hi", null, null);
+
+	private ProviderResilience resilience;
+
+	@BeforeEach
+	void setUp() {
+		resilience = new ProviderResilience();
+		ReflectionTestUtils.setField(resilience, "maxAttempts", 1);
+		ReflectionTestUtils.setField(resilience, "breakerWindowSize", 2);
+		ReflectionTestUtils.setField(resilience, "breakerMinimumCalls", 2);
+		ReflectionTestUtils.setField(resilience, "breakerFailureRateThreshold", 50);
+		ReflectionTestUtils.setField(resilience, "breakerOpenDurationMs", OPEN_DURATION_MS);
+		ReflectionTestUtils.setField(resilience, "breakerHalfOpenCalls", 1);
+		resilience.init();
+	}
+
+	@Test
+	void trialsThatThrowOrAreCancelledGiveTheirPermitBack() throws InterruptedException {
+		openThenWait();
+
+		// a call that throws instead of answering
+		assertThrows(IllegalArgumentException.class, () -> resilience.execute(request, () -> {
+			throw new IllegalArgumentException("bad request");
+		}));
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker().getState());
+
+		// an async call cancelled before it answers, like a client disconnecting
+		resilience.executeAsync(request, Mono::never).subscribe().dispose();
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker().getState());
+
+		// an async call that fails with an error
+		assertThrows(IllegalStateException.class, () -> resilience.executeAsync(request,
+				() -> Mono.error(new IllegalStateException("rejected"))).block());
+
+		assertEquals(FailureType.PERMANENT, resilience.execute(request, () -> failure(FailureType.PERMANENT)).failureType());
+		assertTrue(resilience.execute(request, () -> success()).success());
+		assertEquals(CircuitBreaker.State.CLOSED, breaker().getState());
+	}
+
+	@Test
+	void localCancellationsDoNotOpenTheCircuit() throws InterruptedException {
+		// sends interrupted while queued, e.g. by a bulk deadline or a shutdown
+		for (int i = 0; i < 4; i++) {
+			assertEquals(FailureType.CANCELLED, resilience.execute(request, () -> failure(FailureType.CANCELLED)).failureType());
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, breaker().getState());
+
+		// nor do they count as a failed trial, which would open it again
+		openThenWait();
+		resilience.execute(request, () -> failure(FailureType.CANCELLED));
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker().getState());
+		assertTrue(resilience.execute(request, () -> success()).success());
+		assertEquals(CircuitBreaker.State.CLOSED, breaker().getState());
+	}
+
+	@Test
+	void aStaleHalfOpenOpensAgain() throws InterruptedException {
+		openThenWait();
+
+		// takes the only trial permit and never reports back
+		resilience.executeAsync(request, Mono::never).subscribe();
+		assertEquals(FailureType.CIRCUIT_OPEN, resilience.execute(request, () -> success()).failureType());
+
+		Thread.sleep(OPEN_DURATION_MS + 10);
+		assertEquals(FailureType.CIRCUIT_OPEN, resilience.execute(request, () -> success()).failureType());
+		assertEquals(CircuitBreaker.State.OPEN, breaker().getState());
+
+		Thread.sleep(OPEN_DURATION_MS + 10);
+		assertTrue(resilience.execute(request, () -> success()).success());
+		assertEquals(CircuitBreaker.State.CLOSED, breaker().getState());
+	}
+
+	private void openThenWait() throws InterruptedException {
+		resilience.execute(request, () -> failure(FailureType.TRANSIENT));
+		resilience.execute(request, () -> failure(FailureType.TRANSIENT));
+		assertEquals(CircuitBreaker.State.OPEN, breaker().getState());
+		Thread.sleep(Duration.ofMillis(OPEN_DURATION_MS + 10));
+	}
+
+	@SuppressWarnings("unchecked")
+	private CircuitBreaker breaker() {
+		return ((Map<MessageChannel, CircuitBreaker>) ReflectionTestUtils.getField(resilience, "breakers"))
+				.get(MessageChannel.SMS);
+	}
+
+	private MessageResponse success() {
+		return new MessageResponse(true, "sent", "SM1", MessageChannel.SMS, request.getRecipient());
+	}
+
+	private MessageResponse failure(FailureType failureType) {
+		return new MessageResponse(false, "failed", null, MessageChannel.SMS, request.getRecipient(), failureType);
+	}
+}
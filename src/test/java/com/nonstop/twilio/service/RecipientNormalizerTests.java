@@ -0,0 +1,74 @@
+package com.nonstop.twilio.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nonstop.twilio.enums.MessageChannel;
+
+class RecipientNormalizerTests {
+
+	private RecipientNormalizer normalizer;
+
+	@BeforeEach
+	void setUp() {
+		normalizer = new RecipientNormalizer();
+		ReflectionTestUtils.setField(normalizer, "cacheSize", 100);
+		normalizer.init();
+	}
+
+	@Test
+	void returnsCanonicalPhoneNumbersUnchanged() {
+		String number = "+15551234567";
+		assertSame(number, normalizer.normalize(MessageChannel.SMS, number));
+	}
+
+	@Test
+	void rewritesFormattedPhoneNumbers() {
+		assertEquals("+15551234567", normalizer.normalize(MessageChannel.SMS, " +1 (555) 123-4567 "));
+		assertEquals("+447911123456", normalizer.normalize(MessageChannel.SMS, "00 44 7911 123456"));
+	}
+
+	@Test
+	void rejectsInvalidPhoneNumbers() {
+		assertNull(normalizer.normalize(MessageChannel.SMS, "5551234567"));
+		assertNull(normalizer.normalize(MessageChannel.SMS, "+0551234567"));
+		assertNull(normalizer.normalize(MessageChannel.SMS, "+1555123456789012"));
+		assertNull(normalizer.normalize(MessageChannel.SMS, "+1555abc4567"));
+		assertNull(normalizer.normalize(MessageChannel.SMS, "+123"));
+	}
+
+	@Test
+	void addsWhatsAppPrefix() {
+		String prefixed = "whatsapp:+15551234567";
+		assertSame(prefixed, normalizer.normalize(MessageChannel.WHATSAPP, prefixed));
+		assertEquals(prefixed, normalizer.normalize(MessageChannel.WHATSAPP, "+15551234567"));
+		assertEquals(prefixed, normalizer.normalize(MessageChannel.WHATSAPP, "WhatsApp:+1 555 123 4567"));
+		assertNull(normalizer.normalize(MessageChannel.WHATSAPP, "whatsapp:5551234567"));
+	}
+
+	@Test
+	void validatesEmailLikeTheOldPattern() {
+		String email = "first.last+tag@mail.example.com";
+		assertSame(email, normalizer.normalize(MessageChannel.EMAIL, email));
+		assertEquals("User@example.com", normalizer.normalize(MessageChannel.EMAIL, "User@Example.COM"));
+
+		assertNull(normalizer.normalize(MessageChannel.EMAIL, "user@example"));
+		assertNull(normalizer.normalize(MessageChannel.EMAIL, "user@.com"));
+		assertNull(normalizer.normalize(MessageChannel.EMAIL, "@example.com"));
+		assertNull(normalizer.normalize(MessageChannel.EMAIL, "user@@example.com"));
+		assertNull(normalizer.normalize(MessageChannel.EMAIL, "user@example.c0m"));
+		assertNull(normalizer.normalize(MessageChannel.EMAIL, "us er@example.com"));
+	}
+
+	@Test
+	void acceptsNumericPageScopedIds() {
+		assertEquals("1254477777772919", normalizer.normalize(MessageChannel.FACEBOOK, "1254477777772919"));
+		assertNull(normalizer.normalize(MessageChannel.FACEBOOK, "user-1"));
+		assertNull(normalizer.normalize(MessageChannel.FACEBOOK, ""));
+	}
+}
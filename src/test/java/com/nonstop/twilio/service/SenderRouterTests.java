@@ -0,0 +1,107 @@
+package com.nonstop.twilio.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.FailureType;
+import com.nonstop.twilio.enums.MessageChannel;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SenderRouterTests {
+
+	private static final MessageResponse OK = new MessageResponse(true, "sent", "id", MessageChannel.SMS, "+15550001");
+	private static final MessageResponse DOWN = new MessageResponse(false, "503", null, MessageChannel.SMS, "+15550001",
+			FailureType.TRANSIENT);
+	private static final MessageResponse BAD_NUMBER = new MessageResponse(false, "400", null, MessageChannel.SMS,
+			"+15550001", FailureType.INVALID_REQUEST);
+
+	@Test
+	void prefersTheFasterSender() {
+		SenderRouter router = router(List.of("+15550100", "+15550200"));
+		SenderRouter.Sender fast = sender(router, "+15550100");
+		SenderRouter.Sender slow = sender(router, "+15550200");
+		complete(fast, 5, OK);
+		complete(slow, 80, OK);
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals("+15550100", router.choose(MessageChannel.SMS).getSenderId());
+		}
+	}
+
+	@Test
+	void skipsFailingSendersAndFailsOverOnRetry() {
+		SenderRouter router = router(List.of("+15550100", "+15550200", "+15550300"));
+		SenderRouter.Sender failing = sender(router, "+15550100");
+		for (int i = 0; i < 20; i++) {
+			complete(failing, 1, DOWN);
+		}
+		// the recipient's fault, not the sender's
+		complete(sender(router, "+15550200"), 1, BAD_NUMBER);
+
+		assertFalse(router.getHealth().get(MessageChannel.SMS).get(0).isHealthy());
+		for (int i = 0; i < 100; i++) {
+			assertNotEquals("+15550100", router.choose(MessageChannel.SMS).getSenderId());
+		}
+
+		SenderRouter.Attempts attempts = router.attempts(MessageChannel.SMS);
+		SenderRouter.Sender first = attempts.next();
+		assertNotEquals(first, attempts.next());
+		assertNull(router.choose(MessageChannel.EMAIL));
+	}
+
+	private static void complete(SenderRouter.Sender sender, long latencyMs, MessageResponse response) {
+		sender.end(sender.begin() - TimeUnit.MILLISECONDS.toNanos(latencyMs), response);
+	}
+
+	private static SenderRouter.Sender sender(SenderRouter router, String senderId) {
+		SenderRouter.Sender sender;
+		do {
+			sender = router.choose(MessageChannel.SMS);
+		} while (!sender.getSenderId().equals(senderId));
+		return sender;
+	}
+
+	private static SenderRouter router(List<String> senderIds) {
+		MessageServiceRegistry registry = new MessageServiceRegistry();
+		ReflectionTestUtils.setField(registry, "messageServices", List.of(new PooledSmsService(senderIds)));
+		registry.init();
+
+		SenderRouter router = new SenderRouter();
+		ReflectionTestUtils.setField(router, "decayMs", 60_000L);
+		ReflectionTestUtils.setField(router, "alpha", 0.1);
+		ReflectionTestUtils.setField(router, "unhealthyErrorRate", 0.5);
+		ReflectionTestUtils.setField(router, "messageServiceRegistry", registry);
+		ReflectionTestUtils.setField(router, "meterRegistry", new SimpleMeterRegistry());
+		router.init();
+		return router;
+	}
+
+	private record PooledSmsService(List<String> senderIds) implements MessageService {
+
+		@Override
+		public MessageResponse sendMessage(MessageRequest request) {
+			return OK;
+		}
+
+		@Override
+		public boolean supports(MessageChannel channel) {
+			return channel == MessageChannel.SMS;
+		}
+
+		@Override
+		public List<String> getSenderIds() {
+			return senderIds;
+		}
+	}
+}
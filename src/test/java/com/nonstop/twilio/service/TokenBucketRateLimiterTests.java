@@ -0,0 +1,48 @@
+package com.nonstop.twilio.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketRateLimiterTests {
+
+	@Test
+	void allowsBurstThenSpacesReservations() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 3, Duration.ofSeconds(5));
+
+		assertEquals(0, limiter.reserve());
+		assertEquals(0, limiter.reserve());
+		assertEquals(0, limiter.reserve());
+
+		long fourth = limiter.reserve();
+		long fifth = limiter.reserve();
+		assertTrue(fourth > 0 && fourth <= 100_000_000L);
+		assertTrue(fifth > fourth);
+	}
+
+	@Test
+	void rejectsReservationsBeyondMaxWait() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 1, Duration.ofMillis(1500));
+
+		assertEquals(0, limiter.reserve());
+		assertTrue(limiter.reserve() > 0);
+		assertEquals(-1, limiter.reserve());
+	}
+
+	@Test
+	void backsOffWhenThrottledAndRecoversOnSuccess() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(100, 1, Duration.ofSeconds(30));
+
+		limiter.onThrottled(Duration.ofSeconds(2));
+		assertEquals(50, limiter.getCurrentRate(), 0.01);
+		assertTrue(limiter.reserve() > 1_000_000_000L);
+
+		for (int i = 0; i < 20; i++) {
+			limiter.onSuccess();
+		}
+		assertEquals(100, limiter.getCurrentRate(), 0.01);
+	}
+}
@@ -0,0 +1,89 @@
+package com.nonstop.twilio.service.coalesce;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageResponse;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.enums.MessagePriority;
+import com.nonstop.twilio.service.RecipientNormalizer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class MessageCoalescerTests {
+
+	private final List<MessageRequest> sent = new CopyOnWriteArrayList<>();
+
+	private final Function<MessageRequest, Mono<MessageResponse>> send = request -> {
+		sent.add(request);
+		return Mono.just(new MessageResponse(true, "sent", "SM" + sent.size(), request.getChannel(), request.getRecipient()));
+	};
+
+	private MessageCoalescer coalescer;
+
+	@BeforeEach
+	void setUp() {
+		RecipientNormalizer normalizer = new RecipientNormalizer();
+		ReflectionTestUtils.setField(normalizer, "cacheSize", 100);
+		normalizer.init();
+
+		coalescer = new MessageCoalescer();
+		ReflectionTestUtils.setField(coalescer, "enabled", true);
+		ReflectionTestUtils.setField(coalescer, "windowMs", 50L);
+		ReflectionTestUtils.setField(coalescer, "maxMessages", 10);
+		ReflectionTestUtils.setField(coalescer, "channels", MessageChannel.values());
+		ReflectionTestUtils.setField(coalescer, "mergeChannels", new MessageChannel[] { MessageChannel.SMS });
+		ReflectionTestUtils.setField(coalescer, "recipientNormalizer", normalizer);
+		ReflectionTestUtils.setField(coalescer, "meterRegistry", new SimpleMeterRegistry());
+		coalescer.init();
+	}
+
+	@Test
+	void mergesABurstToOneRecipientIntoOneSend() {
+		MessageRequest urgent = new MessageRequest(MessageChannel.SMS, "+15551234567", "Disk full", null, null);
+		urgent.setPriority(MessagePriority.TRANSACTIONAL);
+
+		CompletableFuture<MessageResponse> first = coalescer.submit(
+				new MessageRequest(MessageChannel.SMS, "+15551234567", "CPU high", null, null), send);
+		CompletableFuture<MessageResponse> duplicate = coalescer.submit(
+				new MessageRequest(MessageChannel.SMS, "+15551234567", "CPU high", null, null), send);
+		CompletableFuture<MessageResponse> second = coalescer.submit(urgent, send);
+		CompletableFuture<MessageResponse> elsewhere = coalescer.submit(
+				new MessageRequest(MessageChannel.SMS, "+15557654321", "CPU high", null, null), send);
+
+		assertSame(first.join(), duplicate.join());
+		assertSame(first.join(), second.join());
+		elsewhere.join();
+
+		assertEquals(2, sent.size());
+		MessageRequest merged = sent.stream().filter(r -> r.getRecipient().equals("+15551234567")).findFirst().orElseThrow();
+		assertEquals("CPU high\nDisk full", merged.getMessage());
+		assertEquals(MessagePriority.TRANSACTIONAL, merged.getPriority());
+	}
+
+	@Test
+	void onlyFoldsIdenticalMessagesOnOtherChannels() {
+		MessageRequest welcome = new MessageRequest(MessageChannel.EMAIL, "user@example.com", "Welcome", "Hi", null);
+		CompletableFuture<MessageResponse> first = coalescer.submit(welcome, send);
+		CompletableFuture<MessageResponse> again = coalescer.submit(
+				new MessageRequest(MessageChannel.EMAIL, "user@example.com", "Welcome", "Hi", null), send);
+		CompletableFuture<MessageResponse> other = coalescer.submit(
+				new MessageRequest(MessageChannel.EMAIL, "user@example.com", "Your receipt", "Receipt", null), send);
+
+		assertSame(first.join(), again.join());
+		other.join();
+		assertEquals(2, sent.size());
+		assertSame(welcome, sent.get(0));
+	}
+}
@@ -0,0 +1,68 @@
+package com.nonstop.twilio.service.schedule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTests {
+
+	@Test
+	void expiresEachTimeoutOnItsTickAcrossLevels() {
+		// one tick per millisecond, starting just below a level 1 and level 2 boundary
+		long start = (1L << 16) - 3;
+		TimingWheel<Long> wheel = new TimingWheel<>(1, start);
+
+		Random random = new Random(42);
+		List<Long> deadlines = new ArrayList<>();
+		for (int i = 0; i < 2_000; i++) {
+			// spread over levels 0 to 2, with a few far out in level 3
+			long delay = i % 100 == 0 ? 1 + random.nextInt(1 << 25) : 1 + random.nextInt(1 << 18);
+			deadlines.add(start + delay);
+			wheel.add(start + delay, start + delay);
+		}
+		assertEquals(2_000, wheel.size());
+
+		List<long[]> expired = new ArrayList<>();
+		long now = start;
+		while (wheel.size() > 0) {
+			now += 1 + random.nextInt(5_000);
+			long advancedTo = now;
+			wheel.advance(now, deadline -> expired.add(new long[] { deadline, advancedTo }));
+		}
+
+		assertEquals(deadlines.size(), expired.size());
+		long previous = 0;
+		for (long[] entry : expired) {
+			// never early, never later than the advance that reached it, and in deadline order
+			assertTrue(entry[0] <= entry[1]);
+			assertTrue(entry[0] >= previous);
+			previous = entry[0];
+		}
+	}
+
+	@Test
+	void cancelledTimeoutsNeverExpire() {
+		TimingWheel<String> wheel = new TimingWheel<>(10, 1_000);
+		TimingWheel.Timeout<String> kept = wheel.add("kept", 5_000);
+		TimingWheel.Timeout<String> dropped = wheel.add("dropped", 5_000);
+		wheel.add("late", 10_000_000);
+
+		assertTrue(wheel.cancel(dropped));
+		assertFalse(wheel.cancel(dropped));
+
+		List<String> expired = new ArrayList<>();
+		wheel.advance(5_000, expired::add);
+		assertEquals(List.of("kept"), expired);
+		assertFalse(wheel.cancel(kept));
+		assertEquals(1, wheel.size());
+
+		wheel.advance(10_000_000, expired::add);
+		assertEquals(List.of("kept", "late"), expired);
+	}
+}
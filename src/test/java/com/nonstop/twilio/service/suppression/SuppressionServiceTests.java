@@ -0,0 +1,167 @@
+package com.nonstop.twilio.service.suppression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nonstop.twilio.dto.InboundEvent;
+import com.nonstop.twilio.enums.InboundEventType;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.enums.SuppressionReason;
+import com.nonstop.twilio.service.RecipientNormalizer;
+import com.nonstop.twilio.service.webhook.SendGridEventWebhookService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SuppressionServiceTests {
+
+	@TempDir
+	Path directory;
+
+	private SuppressionService open() throws IOException {
+		RecipientNormalizer normalizer = new RecipientNormalizer();
+		ReflectionTestUtils.setField(normalizer, "cacheSize", 100);
+		normalizer.init();
+
+		SuppressionService service = new SuppressionService();
+		ReflectionTestUtils.setField(service, "enabled", true);
+		ReflectionTestUtils.setField(service, "directory", directory.toString());
+		ReflectionTestUtils.setField(service, "expectedEntries", 1000L);
+		ReflectionTestUtils.setField(service, "falsePositiveRate", 0.01);
+		ReflectionTestUtils.setField(service, "initialCapacity", 16);
+		ReflectionTestUtils.setField(service, "recipientNormalizer", normalizer);
+		ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+		service.init();
+		return service;
+	}
+
+	@Test
+	void matchesNormalizedRecipientsPerChannel() throws IOException {
+		SuppressionService service = open();
+
+		assertTrue(service.suppress(MessageChannel.SMS, "+1 (555) 123-4567", SuppressionReason.OPTED_OUT));
+		assertTrue(service.suppress(MessageChannel.EMAIL, "User@Example.com", SuppressionReason.HARD_BOUNCE));
+
+		assertTrue(service.isSuppressed(MessageChannel.SMS, "+15551234567"));
+		assertFalse(service.isSuppressed(MessageChannel.WHATSAPP, "+15551234567"));
+		assertTrue(service.isSuppressed(MessageChannel.EMAIL, "user@example.com"));
+		assertFalse(service.isSuppressed(MessageChannel.EMAIL, "other@example.com"));
+		assertEquals(SuppressionReason.HARD_BOUNCE,
+				service.find(MessageChannel.EMAIL, "user@example.com").orElseThrow().getReason());
+
+		service.onTwilioError(MessageChannel.SMS, "+15557654321", "30006");
+		assertTrue(service.isSuppressed(MessageChannel.SMS, "+15557654321"));
+		service.onTwilioError(MessageChannel.SMS, "+15550000000", "30001");
+		assertFalse(service.isSuppressed(MessageChannel.SMS, "+15550000000"));
+
+		assertTrue(service.unsuppress(MessageChannel.SMS, "+15551234567"));
+		assertFalse(service.isSuppressed(MessageChannel.SMS, "+15551234567"));
+		assertFalse(service.unsuppress(MessageChannel.SMS, "+15551234567"));
+	}
+
+	@Test
+	void growsAndSurvivesARestart() throws IOException {
+		SuppressionService service = open();
+		for (int i = 0; i < 500; i++) {
+			service.suppress(MessageChannel.EMAIL, "user" + i + "@example.com", SuppressionReason.OPTED_OUT);
+		}
+		for (int i = 0; i < 500; i += 2) {
+			service.unsuppress(MessageChannel.EMAIL, "user" + i + "@example.com");
+		}
+		service.close();
+
+		SuppressionService reopened = open();
+		for (int i = 0; i < 500; i++) {
+			assertEquals(i % 2 == 1, reopened.isSuppressed(MessageChannel.EMAIL, "user" + i + "@example.com"), "user" + i);
+		}
+		assertEquals(SuppressionReason.OPTED_OUT,
+				reopened.find(MessageChannel.EMAIL, "user1@example.com").orElseThrow().getReason());
+	}
+
+	@Test
+	void optInsOnlyLiftVerifiedOptOuts() throws IOException {
+		SuppressionService service = open();
+		OptOutEventHandler handler = new OptOutEventHandler();
+		ReflectionTestUtils.setField(handler, "suppressionService", service);
+
+		service.suppress(MessageChannel.FACEBOOK, "psid-1", SuppressionReason.OPTED_OUT);
+		service.suppress(MessageChannel.FACEBOOK, "psid-2", SuppressionReason.SPAM_COMPLAINT);
+		service.suppress(MessageChannel.FACEBOOK, "psid-3", SuppressionReason.OPTED_OUT);
+
+		handler.handle(List.of(message("psid-1", "start", true), message("psid-2", "START", true),
+				message("psid-3", "START", false), message("psid-4", "STOP", false)));
+
+		assertFalse(service.isSuppressed(MessageChannel.FACEBOOK, "psid-1"));
+		assertTrue(service.isSuppressed(MessageChannel.FACEBOOK, "psid-2"));
+		assertTrue(service.isSuppressed(MessageChannel.FACEBOOK, "psid-3"));
+		assertFalse(service.isSuppressed(MessageChannel.FACEBOOK, "psid-4"));
+		assertFalse(service.unsuppress(MessageChannel.FACEBOOK, "psid-2", SuppressionReason.OPTED_OUT));
+	}
+
+	@Test
+	void appliesSendGridEventsOnlyWithAValidSignature() throws IOException, GeneralSecurityException {
+		SuppressionService service = open();
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(256);
+		KeyPair keys = generator.generateKeyPair();
+
+		byte[] body = ("[{\"email\":\"gone@example.com\",\"event\":\"bounce\",\"type\":\"bounce\"},"
+				+ "{\"email\":\"group@example.com\",\"event\":\"group_unsubscribe\",\"asm_group_id\":1},"
+				+ "{\"email\":\"optout@example.com\",\"event\":\"unsubscribe\"}]").getBytes(StandardCharsets.UTF_8);
+		Signature signer = Signature.getInstance("SHA256withECDSA");
+		signer.initSign(keys.getPrivate());
+		signer.update("1700000000".getBytes(StandardCharsets.UTF_8));
+		signer.update(body);
+		String signature = Base64.getEncoder().encodeToString(signer.sign());
+
+		// no key configured, acknowledged but not applied
+		assertTrue(sendGridWebhook(service, "").handle(body, signature, "1700000000"));
+		assertFalse(service.isSuppressed(MessageChannel.EMAIL, "gone@example.com"));
+
+		SendGridEventWebhookService webhook = sendGridWebhook(service,
+				Base64.getEncoder().encodeToString(keys.getPublic().getEncoded()));
+		assertFalse(webhook.handle(body, signature, "1700000001"));
+		assertFalse(service.isSuppressed(MessageChannel.EMAIL, "gone@example.com"));
+
+		assertTrue(webhook.handle(body, signature, "1700000000"));
+		assertTrue(service.isSuppressed(MessageChannel.EMAIL, "gone@example.com"));
+		assertTrue(service.isSuppressed(MessageChannel.EMAIL, "optout@example.com"));
+		assertFalse(service.isSuppressed(MessageChannel.EMAIL, "group@example.com"));
+	}
+
+	private static SendGridEventWebhookService sendGridWebhook(SuppressionService service, String publicKey)
+			throws GeneralSecurityException {
+		SendGridEventWebhookService webhook = new SendGridEventWebhookService();
+		ReflectionTestUtils.setField(webhook, "publicKey", publicKey);
+		ReflectionTestUtils.setField(webhook, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(webhook, "suppressionService", service);
+		ReflectionTestUtils.setField(webhook, "meterRegistry", new SimpleMeterRegistry());
+		webhook.init();
+		return webhook;
+	}
+
+	private static InboundEvent message(String senderId, String text, boolean verified) {
+		InboundEvent event = new InboundEvent();
+		event.setChannel(MessageChannel.FACEBOOK);
+		event.setType(InboundEventType.MESSAGE);
+		event.setSenderId(senderId);
+		event.setText(text);
+		event.setVerified(verified);
+		return event;
+	}
+}
@@ -0,0 +1,123 @@
+package com.nonstop.twilio.service.template;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nonstop.twilio.dto.MessageRequest;
+import com.nonstop.twilio.dto.MessageTemplate;
+import com.nonstop.twilio.enums.MessageChannel;
+
+class TemplateServiceTests {
+
+	private TemplateService templateService;
+
+	@BeforeEach
+	void setUp() {
+		templateService = new TemplateService();
+		ReflectionTestUtils.setField(templateService, "maxTemplates", 100);
+		ReflectionTestUtils.setField(templateService, "cacheSize", 2);
+		ReflectionTestUtils.setField(templateService, "bufferPoolSize", 4);
+		ReflectionTestUtils.setField(templateService, "maxBufferChars", 1024);
+		templateService.init();
+	}
+
+	@Test
+	void splitsPlaceholdersAndRejectsEmptyOnes() {
+		RenderPlan plan = RenderPlan.compile("Hi {{ name }}, {{code}} is your code {{");
+		assertTrue(plan.hasVariables());
+
+		StringBuilder out = new StringBuilder();
+		plan.renderTo(out, Map.of("name", "Ann", "code", "1234"), false);
+		assertEquals("Hi Ann, 1234 is your code {{", out.toString());
+
+		RenderPlan literal = RenderPlan.compile("No placeholders }} here");
+		assertFalse(literal.hasVariables());
+		assertEquals("No placeholders }} here", literal.literal());
+
+		assertThrows(IllegalArgumentException.class, () -> RenderPlan.compile("Hi {{}}"));
+		assertThrows(IllegalArgumentException.class, () -> RenderPlan.compile("Hi {{  }}"));
+		assertThrows(IllegalArgumentException.class,
+				() -> templateService.register(new MessageTemplate("broken", "Hi {{}}", null, null)));
+		assertTrue(templateService.find("broken").isEmpty());
+	}
+
+	@Test
+	void failsOnAMissingVariable() {
+		templateService.register(new MessageTemplate("otp", "Your code is {{code}}", null, null));
+
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> templateService.render(request("otp", Map.of("name", "Ann"))));
+		assertEquals("Missing template variable: code", e.getMessage());
+		assertThrows(IllegalArgumentException.class, () -> templateService.render(request("unknown", Map.of())));
+	}
+
+	@Test
+	void escapesVariablesInHtmlContentOnly() {
+		templateService.register(new MessageTemplate("welcome", "Hi {{name}}", "Welcome {{name}}",
+				"<p>Hi <b>{{name}}</b></p>"));
+
+		MessageRequest rendered = templateService.render(request("welcome", Map.of("name", "<Tom & \"Jerry\">")));
+
+		assertEquals("Hi <Tom & \"Jerry\">", rendered.getMessage());
+		assertEquals("Welcome <Tom & \"Jerry\">", rendered.getSubject());
+		assertEquals("<p>Hi <b>&lt;Tom &amp; &quot;Jerry&quot;&gt;</b></p>", rendered.getHtmlContent());
+	}
+
+	@Test
+	void keepsTheRequestsOwnPartsWhenTheTemplateHasNone() {
+		templateService.register(new MessageTemplate("plain", "Hi {{name}}", null, null));
+
+		MessageRequest request = request("plain", Map.of("name", "Ann"));
+		MessageRequest rendered = templateService.render(request);
+		assertEquals("Hi Ann", rendered.getMessage());
+		assertNull(rendered.getSubject());
+		assertNull(rendered.getHtmlContent());
+
+		request.setSubject("Hello");
+		assertEquals("Hello", templateService.render(request).getSubject());
+	}
+
+	@Test
+	void recompilesAfterReplacementOrEviction() {
+		MessageTemplate first = new MessageTemplate("promo", "Old {{name}}", null, null);
+		templateService.register(first);
+		MessageTemplate second = new MessageTemplate("promo", "New {{name}}", null, null);
+		templateService.register(second);
+		assertEquals("New Ann", templateService.render(request("promo", Map.of("name", "Ann"))).getMessage());
+
+		// a plan compiled from the old source that lands in the cache after the replacement
+		Map<String, CompiledTemplate> compiled = compiled();
+		compiled.put("promo", CompiledTemplate.compile(first));
+		assertEquals("New Ann", templateService.render(request("promo", Map.of("name", "Ann"))).getMessage());
+		assertSame(second, compiled.get("promo").getSource());
+
+		// the cache holds two, registering two more pushes promo out
+		templateService.register(new MessageTemplate("a", "A", null, null));
+		templateService.register(new MessageTemplate("b", "B", null, null));
+		assertFalse(compiled.containsKey("promo"));
+		assertEquals("New Ann", templateService.render(request("promo", Map.of("name", "Ann"))).getMessage());
+		assertSame(second, compiled.get("promo").getSource());
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, CompiledTemplate> compiled() {
+		return (Map<String, CompiledTemplate>) ReflectionTestUtils.getField(templateService, "compiled");
+	}
+
+	private static MessageRequest request(String templateId, Map<String, String> variables) {
+		MessageRequest request = new MessageRequest(MessageChannel.EMAIL, "user@example.com", null, null, null);
+		request.setTemplateId(templateId);
+		request.setVariables(variables);
+		return request;
+	}
+}
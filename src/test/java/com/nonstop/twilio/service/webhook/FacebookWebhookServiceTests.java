@@ -0,0 +1,87 @@
+package com.nonstop.twilio.service.webhook;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nonstop.twilio.dto.InboundEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FacebookWebhookServiceTests {
+
+	private static final String APP_SECRET = "test-app-secret";
+
+	private final BlockingQueue<InboundEvent> received = new LinkedBlockingQueue<>();
+
+	private FacebookWebhookService service;
+
+	@BeforeEach
+	void setUp() {
+		service = new FacebookWebhookService();
+		ReflectionTestUtils.setField(service, "appSecret", APP_SECRET);
+		ReflectionTestUtils.setField(service, "bufferSize", 16);
+		ReflectionTestUtils.setField(service, "workerCount", 2);
+		ReflectionTestUtils.setField(service, "batchSize", 8);
+		ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(service, "handlers", List.<InboundEventHandler>of(received::addAll));
+		service.init();
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		service.shutdown();
+	}
+
+	@Test
+	void idleWorkersParkUntilACallbackArrives() throws Exception {
+		@SuppressWarnings("unchecked")
+		List<Thread> workers = (List<Thread>) ReflectionTestUtils.getField(service, "workers");
+		awaitParked(workers);
+
+		for (int i = 0; i < 3; i++) {
+			byte[] body = ("{\"object\":\"page\",\"entry\":[{\"id\":\"page-1\",\"messaging\":[{\"sender\":{\"id\":\"psid-" + i
+					+ "\"},\"recipient\":{\"id\":\"page-1\"},\"timestamp\":1,\"message\":{\"mid\":\"m" + i
+					+ "\",\"text\":\"hi\"}}]}]}").getBytes(StandardCharsets.UTF_8);
+			assertEquals(FacebookWebhookService.Result.ACCEPTED, service.accept(body, sign(body)));
+
+			InboundEvent event = received.poll(5, TimeUnit.SECONDS);
+			assertEquals("psid-" + i, event.getSenderId());
+			assertTrue(event.isVerified());
+
+			// back to waiting without a timeout once the buffer stays empty
+			awaitParked(workers);
+		}
+	}
+
+	// WAITING rather than TIMED_WAITING, so they are not woken by a timer
+	private static void awaitParked(List<Thread> workers) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!workers.stream().allMatch(worker -> worker.getState() == Thread.State.WAITING)) {
+			assertTrue(System.nanoTime() < deadline, "workers did not park");
+			Thread.sleep(5);
+		}
+	}
+
+	private static String sign(byte[] body) throws Exception {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(APP_SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+		return "sha256=" + HexFormat.of().formatHex(mac.doFinal(body));
+	}
+}
@@ -0,0 +1,79 @@
+package com.nonstop.twilio.service.webhook;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RingBufferTests {
+
+	@Test
+	void keepsOrderAndRefusesWhenFull() {
+		RingBuffer<Integer> buffer = new RingBuffer<>(3);
+		assertEquals(4, buffer.capacity());
+
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer(i));
+		}
+		assertFalse(buffer.offer(4));
+
+		List<Integer> drained = new ArrayList<>();
+		assertEquals(2, buffer.drainTo(drained, 2));
+		assertEquals(List.of(0, 1), drained);
+
+		// the freed slots are reused on the next lap
+		assertTrue(buffer.offer(4));
+		assertTrue(buffer.offer(5));
+		assertEquals(4, buffer.size());
+		for (int expected = 2; expected <= 5; expected++) {
+			assertEquals(expected, buffer.poll());
+		}
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	void deliversEveryElementOnceUnderContention() throws InterruptedException {
+		RingBuffer<Integer> buffer = new RingBuffer<>(64);
+		int producers = 4;
+		int perProducer = 20_000;
+		int total = producers * perProducer;
+
+		ConcurrentHashMap.KeySetView<Integer, Boolean> seen = ConcurrentHashMap.newKeySet();
+		AtomicInteger consumed = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(2 * producers);
+
+		for (int p = 0; p < producers; p++) {
+			int base = p * perProducer;
+			Thread.ofPlatform().start(() -> {
+				for (int i = 0; i < perProducer; i++) {
+					while (!buffer.offer(base + i)) {
+						Thread.onSpinWait();
+					}
+				}
+				done.countDown();
+			});
+			Thread.ofPlatform().start(() -> {
+				while (consumed.get() < total) {
+					Integer element = buffer.poll();
+					if (element != null) {
+						assertTrue(seen.add(element));
+						consumed.incrementAndGet();
+					}
+				}
+				done.countDown();
+			});
+		}
+
+		done.await();
+		assertEquals(total, seen.size());
+		assertEquals(0, buffer.size());
+	}
+}
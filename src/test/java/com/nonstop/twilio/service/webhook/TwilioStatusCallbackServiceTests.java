@@ -0,0 +1,109 @@
+package com.nonstop.twilio.service.webhook;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nonstop.twilio.enums.DeliveryStatus;
+import com.nonstop.twilio.enums.MessageChannel;
+import com.nonstop.twilio.service.DeliveryStatusIndex;
+import com.nonstop.twilio.service.RecipientNormalizer;
+import com.nonstop.twilio.service.suppression.SuppressionService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TwilioStatusCallbackServiceTests {
+
+	private static final String AUTH_TOKEN = "test-auth-token";
+	private static final String CALLBACK_URL = "https://example.com/webhook/twilio/status";
+
+	private final Map<String, String> params = Map.of(
+			"MessageSid", "SM123",
+			"MessageStatus", "undelivered",
+			"ErrorCode", "30006",
+			"To", "+15551234567",
+			"From", "+15550100");
+
+	private DeliveryStatusIndex index;
+	private SuppressionService suppressionService;
+	private TwilioStatusCallbackService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+		index = new DeliveryStatusIndex();
+		ReflectionTestUtils.setField(index, "maxEntries", 100);
+		ReflectionTestUtils.setField(index, "maxTransitions", 8);
+		ReflectionTestUtils.setField(index, "meterRegistry", meterRegistry);
+		index.init();
+
+		RecipientNormalizer normalizer = new RecipientNormalizer();
+		ReflectionTestUtils.setField(normalizer, "cacheSize", 100);
+		normalizer.init();
+
+		suppressionService = new SuppressionService();
+		ReflectionTestUtils.setField(suppressionService, "enabled", true);
+		ReflectionTestUtils.setField(suppressionService, "directory", "");
+		ReflectionTestUtils.setField(suppressionService, "expectedEntries", 1000L);
+		ReflectionTestUtils.setField(suppressionService, "falsePositiveRate", 0.01);
+		ReflectionTestUtils.setField(suppressionService, "initialCapacity", 16);
+		ReflectionTestUtils.setField(suppressionService, "recipientNormalizer", normalizer);
+		ReflectionTestUtils.setField(suppressionService, "meterRegistry", meterRegistry);
+		suppressionService.init();
+
+		service = new TwilioStatusCallbackService();
+		ReflectionTestUtils.setField(service, "authToken", AUTH_TOKEN);
+		ReflectionTestUtils.setField(service, "statusCallbackUrl", CALLBACK_URL);
+		ReflectionTestUtils.setField(service, "validateSignature", true);
+		ReflectionTestUtils.setField(service, "deliveryStatusIndex", index);
+		ReflectionTestUtils.setField(service, "suppressionService", suppressionService);
+		ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+		service.init();
+	}
+
+	@Test
+	void rejectsAMissingOrWrongSignature() throws GeneralSecurityException {
+		assertFalse(service.handle(params, null, "http://internal:8080/webhook/twilio/status"));
+		assertFalse(service.handle(params, sign("another-token", params), "http://internal:8080/webhook/twilio/status"));
+
+		Map<String, String> tampered = new TreeMap<>(params);
+		tampered.put("MessageStatus", "delivered");
+		assertFalse(service.handle(tampered, sign(AUTH_TOKEN, params), "http://internal:8080/webhook/twilio/status"));
+
+		assertTrue(index.find("SM123").isEmpty());
+		assertFalse(suppressionService.isSuppressed(MessageChannel.SMS, "+15551234567"));
+	}
+
+	@Test
+	void appliesASignedCallback() throws GeneralSecurityException {
+		// signed over the configured public url, not the one the request arrived on
+		assertTrue(service.handle(params, sign(AUTH_TOKEN, params), "http://internal:8080/webhook/twilio/status"));
+
+		assertEquals(DeliveryStatus.UNDELIVERED, index.find("SM123").orElseThrow().getStatus());
+		assertTrue(suppressionService.isSuppressed(MessageChannel.SMS, "+15551234567"));
+	}
+
+	// base64 HMAC-SHA1 over the url followed by every parameter name and value, sorted by name
+	private static String sign(String authToken, Map<String, String> params) throws GeneralSecurityException {
+		StringBuilder data = new StringBuilder(CALLBACK_URL);
+		new TreeMap<>(params).forEach((name, value) -> data.append(name).append(value));
+
+		Mac mac = Mac.getInstance("HmacSHA1");
+		mac.init(new SecretKeySpec(authToken.getBytes(StandardCharsets.UTF_8), "HmacSHA1"));
+		return Base64.getEncoder().encodeToString(mac.doFinal(data.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+}